@@ -1,5 +1,6 @@
 package com.db.swift.dfx.service.config;
 
+import com.db.swift.dfx.service.utils.VirtualThreads;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -29,6 +30,9 @@ public class RestClientConfig {
     @Value("${proxy.port:0}")
     private int proxyPort;
 
+    @Value("${dfx.virtual-threads:false}")
+    private boolean virtualThreads;
+
     /**
      * Creates a RestClient bean for communicating with the external LEI API.
      * The base URL is configured in the application properties.
@@ -44,23 +48,28 @@ public class RestClientConfig {
                 .baseUrl(leiApiBaseUrl)
                 .messageConverters(converters -> converters.add(0, customConverter));
 
+        HttpClient.Builder httpClient = HttpClient.newBuilder();
         if (StringUtils.hasText(proxyHost) && proxyPort > 0) {
             log.info("Configuring RestClient with proxy: {}:{}", proxyHost, proxyPort);
-
-            // Create an HttpClient with the specified proxy
-            HttpClient httpClient = HttpClient.newBuilder()
-                    .proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)))
-                    .build();
-
-            // Create a request factory using the proxied HttpClient
-            ClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
-
-            // Apply the factory to the RestClient builder
-            builder.requestFactory(requestFactory);
+            httpClient.proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)));
         } else {
             log.info("No proxy configured for RestClient.");
         }
 
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            // The HttpClient completes its exchanges on its executor; with virtual threads a slow GLEIF API only
+            // parks the threads waiting for it.
+            log.info("Configuring RestClient with virtual threads.");
+            httpClient.executor(VirtualThreads.executor("lei-client-"));
+        } else if (virtualThreads) {
+            log.warn("Virtual threads are not supported by Java {}, the RestClient uses platform threads",
+                    Runtime.version().feature());
+        }
+
+        // Create a request factory using the configured HttpClient
+        ClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient.build());
+        builder.requestFactory(requestFactory);
+
         return builder.build();
 
     }
@@ -1,6 +1,8 @@
 package com.db.swift.dfx.service.config;
 
+import com.db.swift.dfx.service.constants.DfxConstants;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -11,6 +13,7 @@ public class WebConfig implements WebMvcConfigurer {
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
-        registry.addMapping("/**");
+        registry.addMapping("/**")
+                .exposedHeaders(HttpHeaders.ETAG, DfxConstants.NEXT_CURSOR_HEADER, DfxConstants.CHANGE_SEQUENCE_HEADER);
     }
 }
@@ -7,4 +7,6 @@ public final class DfxConstants {
     public static final Set<String> DIGITAL_CURRENCIES = Set.of("USDC", "USDT", "XBS", "ECNY", "DEUR");
     public static final Pattern FX_PATTERN = Pattern.compile("FX:(\\w+)/(\\w+)");
     public static final String DB_LEGAL_NAME = "DEUTSCHE BANK AKTIENGESELLSCHAFT";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String CHANGE_SEQUENCE_HEADER = "X-Change-Sequence";
 }
@@ -0,0 +1,37 @@
+package com.db.swift.dfx.service.controller;
+
+import com.db.swift.dfx.openapi.api.ExportMessagesApi;
+import com.db.swift.dfx.service.services.MessageExportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+public class ExportMessagesApiImpl implements ExportMessagesApi {
+    private final MessageExportService messageExportService;
+
+    @Override
+    public ResponseEntity<Resource> exportMessages(String resumeToken) {
+        log.info("Received request to export all stored messages.");
+        InputStream export;
+        try {
+            export = messageExportService.export(resumeToken);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        // The export is written to the response while it is read, see MessageExportService.
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(new InputStreamResource(export));
+    }
+}
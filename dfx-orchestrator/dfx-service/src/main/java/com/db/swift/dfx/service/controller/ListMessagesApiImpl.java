@@ -1,13 +1,22 @@
 package com.db.swift.dfx.service.controller;
 
 import com.db.swift.dfx.openapi.api.ListMessagesApi;
+import com.db.swift.dfx.openapi.model.MessageSummary;
 import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.constants.DfxConstants;
 import com.db.swift.dfx.service.services.MessageStorageService;
+import com.db.swift.dfx.service.storage.MessageCursor;
+import com.db.swift.dfx.service.storage.MessagePage;
+import com.db.swift.dfx.service.storage.MessageQuery;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @RestController
@@ -15,11 +24,90 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ListMessagesApiImpl implements ListMessagesApi {
     private final MessageStorageService messageStorageService;
+    private final WebRequest webRequest;
 
     @Override
-    public ResponseEntity<List<StoredMessage>> getMessages() {
-        log.info("Received request to list all stored messages.");
-        List<StoredMessage> messages = messageStorageService.getAllMessages();
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<List<StoredMessage>> getMessages(String cursor, Integer limit, String status, String direction,
+                                                           String ccy, String bic, OffsetDateTime from, OffsetDateTime to,
+                                                           Boolean payloads) {
+        log.info("Received request to list stored messages.");
+        // Answer unchanged polls before any message is read.
+        String eTag = "\"" + messageStorageService.getStateTag() + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        MessageQuery query = toQuery(status, direction, ccy, bic, from, to);
+        MessagePage<StoredMessage> page = messageStorageService.findMessages(query, toCursor(cursor), limit);
+        return toResponse(eTag, page.nextCursor(), withPayloads(page.messages(), payloads));
+    }
+
+    @Override
+    public ResponseEntity<List<MessageSummary>> getMessageSummaries(String cursor, Integer limit, String status,
+                                                                    String direction, String ccy, String bic,
+                                                                    OffsetDateTime from, OffsetDateTime to) {
+        log.info("Received request to list message summaries.");
+        String eTag = "\"" + messageStorageService.getStateTag() + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        MessageQuery query = toQuery(status, direction, ccy, bic, from, to);
+        MessagePage<MessageSummary> page = messageStorageService.findMessageSummaries(query, toCursor(cursor), limit);
+        return toResponse(eTag, page.nextCursor(), page.messages());
+    }
+
+    @Override
+    public ResponseEntity<List<StoredMessage>> getMessageChanges(Long since, Integer limit, Boolean payloads) {
+        log.info("Received request to list messages changed since {}.", since);
+        long changeSequence = messageStorageService.getChangeSequence();
+        List<StoredMessage> messages = messageStorageService.findChanges(since, limit);
+        return ResponseEntity.ok()
+                .header(DfxConstants.CHANGE_SEQUENCE_HEADER, Long.toString(changeSequence))
+                .body(withPayloads(messages, payloads));
+    }
+
+    /**
+     * Loads the payloads of the messages from the blob store, only if the client asked for them.
+     */
+    private List<StoredMessage> withPayloads(List<StoredMessage> messages, Boolean payloads) {
+        if (!Boolean.TRUE.equals(payloads)) {
+            return messages;
+        }
+        return messages.stream()
+                .map(messageStorageService::withPayloads)
+                .toList();
+    }
+
+    private static MessageQuery toQuery(String status, String direction, String ccy, String bic,
+                                        OffsetDateTime from, OffsetDateTime to) {
+        try {
+            return MessageQuery.builder()
+                    .transactionStatus(status == null ? null : StoredMessage.TransactionStatusEnum.fromValue(status))
+                    .direction(direction == null ? null : StoredMessage.DirectionEnum.fromValue(direction))
+                    .ccy(ccy)
+                    .bic(bic)
+                    .from(from)
+                    .to(to)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private static MessageCursor toCursor(String cursor) {
+        try {
+            return cursor == null ? null : MessageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private static <T> ResponseEntity<List<T>> toResponse(String eTag, MessageCursor nextCursor, List<T> body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+        if (nextCursor != null) {
+            response.header(DfxConstants.NEXT_CURSOR_HEADER, nextCursor.encode());
+        }
+        return response.body(body);
     }
 }
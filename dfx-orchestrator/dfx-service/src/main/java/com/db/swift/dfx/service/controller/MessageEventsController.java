@@ -0,0 +1,43 @@
+package com.db.swift.dfx.service.controller;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.services.MessageEventStreamService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Streams message changes as Server-Sent Events. This endpoint is not part of the OpenAPI specification, as the
+ * generator cannot describe a streaming response; see {@link MessageEventStreamService} for the event format.
+ */
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+public class MessageEventsController {
+    private final MessageEventStreamService messageEventStreamService;
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestParam(name = "messageId", required = false) List<String> messageIds,
+                                   @RequestParam(name = "status", required = false) List<String> statuses) {
+        log.info("Received request to stream message events.");
+        Set<StoredMessage.TransactionStatusEnum> statusFilter;
+        try {
+            statusFilter = statuses == null ? Set.of() : statuses.stream()
+                    .map(StoredMessage.TransactionStatusEnum::fromValue)
+                    .collect(Collectors.toSet());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return messageEventStreamService.subscribe(messageIds == null ? Set.of() : Set.copyOf(messageIds), statusFilter);
+    }
+}
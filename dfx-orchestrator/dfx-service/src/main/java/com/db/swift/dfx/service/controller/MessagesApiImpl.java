@@ -0,0 +1,84 @@
+package com.db.swift.dfx.service.controller;
+
+import com.db.swift.dfx.openapi.api.MessagesApi;
+import com.db.swift.dfx.openapi.model.BatchMessageRequest;
+import com.db.swift.dfx.openapi.model.BatchMessageResponse;
+import com.db.swift.dfx.openapi.model.BatchMessageResult;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
+import com.db.swift.dfx.service.services.MessageIngestionService;
+import com.db.swift.dfx.service.services.MessageIntakeQueue;
+import com.db.swift.dfx.service.services.MessageStorageService;
+import com.db.swift.dfx.service.storage.IdempotencyIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+public class MessagesApiImpl implements MessagesApi {
+    private final MessageStorageService messageStorageService;
+    private final MessageIngestionService messageIngestionService;
+    private final IdempotencyIndex idempotencyIndex;
+    private final ProcessingPipeline processingPipeline;
+    private final MessageIntakeQueue messageIntakeQueue;
+
+    @Override
+    public ResponseEntity<StoredMessage> getMessage(String messageId) {
+        log.info("Received request to get message {}.", messageId);
+        // A queued message that turned out to be a resubmission is answered with its original message.
+        return messageStorageService.findMessageById(messageId)
+                .or(() -> Optional.ofNullable(idempotencyIndex.resolveAlias(messageId))
+                        .flatMap(messageStorageService::findMessageById))
+                .map(messageStorageService::withPayloads)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Override
+    public ResponseEntity<BatchMessageResponse> postMessageBatch(BatchMessageRequest batchMessageRequest) {
+        final OffsetDateTime receivedTimestamp = OffsetDateTime.now();
+        log.info("Received batch of {} outgoing message(s)", batchMessageRequest.getPayloads().size());
+        if (!processingPipeline.isAccepting()) {
+            log.warn("Processing pipeline is full, rejected batch of {} message(s)", batchMessageRequest.getPayloads().size());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(messageIntakeQueue.getRetryAfterSeconds()))
+                    .build();
+        }
+
+        List<MessageIngestionService.IngestionResult> ingested =
+                messageIngestionService.ingestBatch(batchMessageRequest.getPayloads(), receivedTimestamp);
+        List<BatchMessageResult> results = new ArrayList<>(ingested.size());
+        int accepted = 0;
+        for (int i = 0; i < ingested.size(); i++) {
+            MessageIngestionService.IngestionResult result = ingested.get(i);
+            if (result.accepted()) {
+                accepted++;
+            }
+            results.add(BatchMessageResult.builder()
+                    .index(i)
+                    .success(result.accepted())
+                    .messageReference(result.accepted() ? result.messageIds().get(0) : null)
+                    .messageReferences(result.accepted() && result.messageIds().size() > 1 ? result.messageIds() : null)
+                    .rejectedTransactions(result.rejected() > 0 ? result.rejected() : null)
+                    .duplicateTransactions(result.duplicates() > 0 ? result.duplicates() : null)
+                    .error(result.error())
+                    .build());
+        }
+        return ResponseEntity.ok(BatchMessageResponse.builder()
+                .accepted(accepted)
+                .rejected(ingested.size() - accepted)
+                .sentTimestamp(receivedTimestamp)
+                .results(results)
+                .build());
+    }
+}
@@ -1,123 +1,89 @@
 package com.db.swift.dfx.service.controller;
 
-import com.db.swift.dfx.jaxb.model.pacs008.Document;
 import com.db.swift.dfx.openapi.api.PostMessageApi;
 import com.db.swift.dfx.openapi.model.*;
-import com.db.swift.dfx.service.events.MessageStoredEvent;
-import com.db.swift.dfx.service.services.MessageStorageService;
-import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.ConstraintViolationException;
-import jakarta.validation.Validator;
-import jakarta.xml.bind.JAXBException;
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
+import com.db.swift.dfx.service.services.ConcurrentSubmissionException;
+import com.db.swift.dfx.service.services.MessageIngestionService;
+import com.db.swift.dfx.service.services.MessageIntakeQueue;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Base64;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.xml.sax.SAXException;
 
-import java.math.RoundingMode;
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
 import java.util.UUID;
 
-import static com.db.swift.dfx.service.constants.DfxConstants.*;
-
 @RestController
 @Slf4j
 @RequiredArgsConstructor
 public class PostMessageApiImpl implements PostMessageApi {
-    private final JaxbMarshallingUtil jaxbMarshallingUtil;
-    private final Validator validator;
-    private final MessageStorageService messageStorageService;
-    private final ApplicationEventPublisher eventPublisher;
-
     private static final Base64 base64 = new Base64();
 
+    private final MessageIngestionService messageIngestionService;
+    private final MessageIntakeQueue messageIntakeQueue;
+    private final ProcessingPipeline processingPipeline;
+
     @Override
     public ResponseEntity<MessageResponse> postMessage(PostMessageRequest postMessageRequest) {
+        return handleMessage(base64.decode(postMessageRequest.getPayload()));
+    }
+
+    /**
+     * Accepts the pacs.008 as a raw XML body instead of Base64 encoded in JSON. The body is read from the request
+     * stream once and handed to the parser as is. Not part of the OpenAPI specification, as the generated
+     * interface binds a single request body type per operation.
+     */
+    @PostMapping(value = "/message", consumes = {MediaType.APPLICATION_XML_VALUE, MediaType.TEXT_XML_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<MessageResponse> postXmlMessage(InputStream body) throws IOException {
+        return handleMessage(body.readAllBytes());
+    }
+
+    private ResponseEntity<MessageResponse> handleMessage(byte[] xml) {
         UUID messageId = UUID.randomUUID();
         final OffsetDateTime receivedTimestamp = OffsetDateTime.now();
 
         log.info("Received outgoing message, assigned ID: {}", messageId);
 
+        if (messageIntakeQueue.isEnabled()) {
+            return enqueue(xml, messageId.toString(), receivedTimestamp);
+        }
+        if (!processingPipeline.isAccepting()) {
+            log.warn("Processing pipeline is full, rejected outgoing message with ID: {}", messageId);
+            return tooManyRequests(MessageResponse.builder()
+                    .messageReference(messageId.toString())
+                    .sentTimestamp(receivedTimestamp));
+        }
 
         try {
-            List<AuditTrailEntry> auditTrail = new ArrayList<>();
-            auditTrail.add(AuditTrailEntry.builder()
-                    .timestamp(receivedTimestamp)
-                    .action("Initial Outgoing Message Receival")
-                    .details("DFX Service received initial outgoing message").
-                    build()
-            );
-
-            Document payload = jaxbMarshallingUtil.unmarshall(new String(base64.decode(postMessageRequest.getPayload())), Document.class, "/xsd/pacs.008.001.14.xsd");
-            Set<ConstraintViolation<Document>> violations = validator.validate(payload);
-            if (!violations.isEmpty()) {
-                throw new ConstraintViolationException(violations);
-            }
-
-            StoredMessage storedMessage = StoredMessage.builder()
-                    .messageId(messageId.toString())
-                    .timestamp(receivedTimestamp)
-                    .creditorAgentBIC(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAgt().getFinInstnId().getBICFI())
-                    .creditorAgentLEI(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAgt().getFinInstnId().getLEI())
-                    .debitorAgentBIC(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAgt().getFinInstnId().getBICFI())
-                    .debitorAgentLEI(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAgt().getFinInstnId().getLEI())
-                    .direction(getDirectionEnum(payload))
-                    .payload(postMessageRequest.getPayload())
-                    .transactionStatus(StoredMessage.TransactionStatusEnum.RECEIVED)
-                    .auditTrail(auditTrail)
-                    .build();
-
-            if (payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getTokenId() != null ) {
-                storedMessage.setDebitorWallet(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getWalletId().getDbtrWalletAddr());
-                storedMessage.setDebitorNetwork(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getWalletNtwrk().getDbtrWalletNtwrk());
-                storedMessage.setCcy(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getTokenId());
-            } else {
-                storedMessage.setCcy(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getCcy());
-            }
-
-            if (payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAcct().getTokenId() != null ) {
-                storedMessage.setCreditorWallet(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAcct().getWalletId().getCdtrWalletAddr());
-                storedMessage.setCreditorNetwork(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAcct().getWalletNtwrk().getCdtrWalletNtwrk());
-                storedMessage.setTargetCcy(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAcct().getTokenId());
-            } else {
-                storedMessage.setTargetCcy(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAcct().getCcy());
-            }
-            storedMessage.setTargetAmt(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getIntrBkSttlmAmt().getValue());
-
-            if (storedMessage.getDirection().equals(StoredMessage.DirectionEnum.INBOUND)) {
-                storedMessage.setFxTradeDate(LocalDate.now());
-                storedMessage.setAmt(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getInstdAmt().getValue());
-                storedMessage.setFxRate(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getIntrBkSttlmAmt().getValue()
-                                .divide(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getInstdAmt().getValue(), RoundingMode.HALF_UP)
-                        );
-            }
-
-            BlockchainTransactionDetails blockchainTransactionDetails =
-                    BlockchainTransactionDetails.builder()
-                            .network(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getWalletNtwrk().getDbtrWalletNtwrk())
-                            .token(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAcct().getTokenId())
-                            .txId(payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getPmtId().getTxHash())
-                            .build();
-            storedMessage.setBlckchnDetails(blockchainTransactionDetails);
-            messageStorageService.storeMessage(storedMessage);
-            eventPublisher.publishEvent(new MessageStoredEvent(this, messageId.toString()));
+            MessageIngestionService.IngestionResult result =
+                    messageIngestionService.ingest(xml, messageId.toString(), receivedTimestamp);
             MessageResponse response = MessageResponse.builder()
-                    .messageReference(messageId.toString())
+                    .messageReference(result.accepted() ? result.messageIds().get(0) : messageId.toString())
+                    .messageReferences(result.messageIds())
+                    .rejectedTransactions(result.rejected())
+                    .duplicateTransactions(result.duplicates())
                     .sentTimestamp(receivedTimestamp)
-                    .success(true)
+                    .success(result.accepted() && result.rejected() == 0)
                     .build();
+            if (!result.accepted()) {
+                log.error("Failed to process outgoing message with ID: {}. Reason: {}", messageId, result.error());
+                return ResponseEntity.badRequest().body(response);
+            }
             return ResponseEntity.ok(response);
 
         }
-        catch (JAXBException | SAXException | ConstraintViolationException e) {
+        catch (SAXException | IllegalArgumentException e) {
             // IMPROVEMENT: Unified exception handling for better readability.
             log.error("Failed to process outgoing message with ID: {}. Reason: {}", messageId, e.toString());
             MessageResponse response = MessageResponse.builder()
@@ -127,17 +93,38 @@ public class PostMessageApiImpl implements PostMessageApi {
                     .build();
             return ResponseEntity.badRequest().body(response);
         }
+        catch (ConcurrentSubmissionException e) {
+            // The original submission may still store the transaction, a retry is then answered with its message.
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(messageIntakeQueue.getRetryAfterSeconds()))
+                    .body(MessageResponse.builder()
+                            .success(false)
+                            .messageReference(messageId.toString())
+                            .sentTimestamp(receivedTimestamp)
+                            .build());
+        }
     }
 
-    private static StoredMessage.DirectionEnum getDirectionEnum(Document payload) {
-        StoredMessage.DirectionEnum msgDirection;
-        if (payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getCdtrAgt().getFinInstnId().getBICFI().equals("DEUTDEFFXXX")) {
-            msgDirection = StoredMessage.DirectionEnum.INBOUND;
-        } else if (payload.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0).getDbtrAgt().getFinInstnId().getBICFI().equals("DEUTDEFFXXX")) {
-            msgDirection = StoredMessage.DirectionEnum.OUTBOUND;
-        } else {
-            throw new IllegalStateException(DB_LEGAL_NAME + " is neither Debitor nor Creditor Agent. Aborting...");
+    /**
+     * Hands the message to the intake queue and answers with 202 Accepted, or with 429 Too Many Requests if the
+     * queue is full. The message becomes visible under its reference once it has been ingested.
+     */
+    private ResponseEntity<MessageResponse> enqueue(byte[] xml, String messageId, OffsetDateTime receivedTimestamp) {
+        MessageResponse.Builder response = MessageResponse.builder()
+                .messageReference(messageId)
+                .sentTimestamp(receivedTimestamp);
+        if (!messageIntakeQueue.offer(xml, messageId, receivedTimestamp)) {
+            log.warn("Intake queue is full, rejected outgoing message with ID: {}", messageId);
+            return tooManyRequests(response);
         }
-        return msgDirection;
+        return ResponseEntity.accepted()
+                .location(URI.create("/messages/" + messageId))
+                .body(response.success(true).build());
+    }
+
+    private ResponseEntity<MessageResponse> tooManyRequests(MessageResponse.Builder response) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(messageIntakeQueue.getRetryAfterSeconds()))
+                .body(response.success(false).build());
     }
 }
@@ -0,0 +1,47 @@
+package com.db.swift.dfx.service.events;
+
+import com.db.swift.dfx.openapi.model.AuditTrailEntry;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Event published synchronously whenever a message is stored or updated. It describes the change rather than
+ * carrying the message itself, so listeners never see later modifications of the stored object.
+ */
+@Getter
+public class MessageChangedEvent extends ApplicationEvent {
+    private final String messageId;
+    private final long changeSeq;
+    /**
+     * Whether the message was stored for the first time.
+     */
+    private final boolean created;
+    /**
+     * The status before the change, null if the message was just stored.
+     */
+    private final StoredMessage.TransactionStatusEnum previousStatus;
+    private final StoredMessage.TransactionStatusEnum status;
+    /**
+     * The audit trail entries added by this change.
+     */
+    private final List<AuditTrailEntry> newAuditTrailEntries;
+
+    public MessageChangedEvent(Object source, StoredMessage previous, StoredMessage current) {
+        super(source);
+        this.messageId = current.getMessageId();
+        this.changeSeq = current.getChangeSeq();
+        this.created = previous == null;
+        this.previousStatus = previous == null ? null : previous.getTransactionStatus();
+        this.status = current.getTransactionStatus();
+        List<AuditTrailEntry> auditTrail = current.getAuditTrail() == null ? List.of() : current.getAuditTrail();
+        int known = previous == null || previous.getAuditTrail() == null ? 0 : Math.min(previous.getAuditTrail().size(), auditTrail.size());
+        this.newAuditTrailEntries = List.copyOf(auditTrail.subList(known, auditTrail.size()));
+    }
+
+    public boolean isStatusChanged() {
+        return previousStatus != status;
+    }
+}
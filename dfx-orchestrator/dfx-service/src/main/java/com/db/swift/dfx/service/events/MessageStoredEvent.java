@@ -1,5 +1,6 @@
 package com.db.swift.dfx.service.events;
 
+import com.db.swift.dfx.service.pipeline.PipelineContext;
 import lombok.Getter;
 import org.springframework.context.ApplicationEvent;
 
@@ -9,10 +10,14 @@ import org.springframework.context.ApplicationEvent;
  */
 @Getter
 public class MessageStoredEvent extends ApplicationEvent {
-    private final String messageId;
+    private final PipelineContext context;
 
-    public MessageStoredEvent(Object source, String messageId) {
+    public MessageStoredEvent(Object source, PipelineContext context) {
         super(source);
-        this.messageId = messageId;
+        this.context = context;
+    }
+
+    public String getMessageId() {
+        return context.getMessageId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.db.swift.dfx.service.iso20022;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a set of {@link Pacs008Field}s from a pacs.008 message in a single streaming pass, optionally validating the
+ * message against its schema in the same pass.
+ * <p>
+ * The paths of the fields are compiled into a tree of element names once. While reading, the extractor only
+ * follows that tree: elements off the paths are skipped without allocating anything, and only the text of the
+ * fields is collected. Of a repeated element the first occurrence is taken.
+ */
+final class FieldExtractor {
+
+    private static final SAXParserFactory parserFactory = createParserFactory();
+
+    private final Node root = new Node();
+
+    FieldExtractor(Set<Pacs008Field> fields) {
+        for (Pacs008Field field : fields) {
+            Node node = root;
+            for (String segment : field.getPath().split("/")) {
+                if (segment.startsWith("@")) {
+                    node.attributes.put(segment.substring(1), field);
+                } else {
+                    node = node.children.computeIfAbsent(segment, name -> new Node());
+                }
+            }
+            if (!field.getPath().contains("@")) {
+                node.field = field;
+            }
+        }
+        Node node = root;
+        for (String segment : Pacs008Field.TRANSACTION_PATH.split("/")) {
+            node = node.children.computeIfAbsent(segment, name -> new Node());
+        }
+        node.transaction = true;
+    }
+
+    /**
+     * @param xml    The message.
+     * @param schema The schema to validate the message against, or null to skip validation.
+     * @return The values of the fields of the first transaction and the number of transactions.
+     * @throws SAXException if the message is not well-formed or does not match the schema.
+     */
+    Pacs008Fields extract(InputStream xml, Schema schema) throws SAXException, IOException {
+        Pacs008Fields fields = new Pacs008Fields();
+        XMLReader reader;
+        try {
+            reader = parserFactory.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Failed to create XML parser", e);
+        }
+        Handler handler = new Handler(fields);
+        if (schema != null) {
+            ValidatorHandler validatorHandler = schema.newValidatorHandler();
+            // The document comes from outside, it must not make the parser load anything else.
+            validatorHandler.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            validatorHandler.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+            validatorHandler.setContentHandler(handler);
+            reader.setContentHandler(validatorHandler);
+        } else {
+            reader.setContentHandler(handler);
+        }
+        reader.parse(new InputSource(xml));
+        return fields;
+    }
+
+    private static SAXParserFactory createParserFactory() {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("Failed to configure XML parser", e);
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final Map<String, Pacs008Field> attributes = new HashMap<>();
+        private Pacs008Field field;
+        private boolean transaction;
+    }
+
+    private final class Handler extends DefaultHandler {
+        private final Pacs008Fields fields;
+        private final StringBuilder text = new StringBuilder();
+        // The nodes of the open elements, null for an element off the paths.
+        private Node[] open = new Node[16];
+        private int depth;
+        private Pacs008Field collecting;
+
+        private Handler(Pacs008Fields fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            Node parent = depth == 0 ? root : open[depth - 1];
+            Node node = parent == null ? null : parent.children.get(localName);
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = node;
+            if (node == null) {
+                return;
+            }
+            if (node.transaction) {
+                fields.countTransaction();
+            }
+            for (Map.Entry<String, Pacs008Field> attribute : node.attributes.entrySet()) {
+                if (!fields.isSet(attribute.getValue())) {
+                    fields.set(attribute.getValue(), attributes.getValue("", attribute.getKey()));
+                }
+            }
+            if (node.field != null && !fields.isSet(node.field)) {
+                collecting = node.field;
+                text.setLength(0);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting != null) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            Node node = open[--depth];
+            if (node != null && collecting != null && node.field == collecting) {
+                fields.set(collecting, text.toString());
+                collecting = null;
+            }
+        }
+    }
+}
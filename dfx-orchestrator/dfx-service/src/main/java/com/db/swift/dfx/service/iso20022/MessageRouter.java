@@ -0,0 +1,80 @@
+package com.db.swift.dfx.service.iso20022;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes a message to its {@link Pacs008Version} by the namespace of its root element.
+ * <p>
+ * Only the start of the message is read, up to the root element, so routing costs next to nothing compared to
+ * parsing the message; the message is then validated and parsed once, with the schema and JAXB classes of its
+ * version. Messages of other types, e.g. pain.008, are not routed.
+ */
+@Component
+@Slf4j
+public class MessageRouter {
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private final Map<String, Pacs008Version<?, ?, ?>> versions;
+
+    public MessageRouter(List<Pacs008Version<?, ?, ?>> versions) {
+        this.versions = versions.stream()
+                .collect(Collectors.toUnmodifiableMap(Pacs008Version::getNamespace, Function.identity()));
+        log.info("Routing pacs.008 messages of namespaces {}", this.versions.keySet());
+    }
+
+    /**
+     * Returns the version of a pacs.008 message.
+     *
+     * @param xml The message.
+     * @return The version matching the namespace of the root element.
+     * @throws IllegalArgumentException if the message is not well-formed or not a pacs.008 message of a supported
+     *                                  version.
+     */
+    public Pacs008Version<?, ?, ?> route(byte[] xml) {
+        String namespace = rootNamespace(xml);
+        Pacs008Version<?, ?, ?> version = versions.get(namespace);
+        if (version == null) {
+            throw new IllegalArgumentException("Unsupported message type " + (namespace.isEmpty() ? "without namespace" : namespace)
+                    + ", expected one of " + versions.keySet());
+        }
+        return version;
+    }
+
+    private static String rootNamespace(byte[] xml) {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(xml));
+            reader.nextTag();
+            return reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI();
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Malformed message: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.debug("Failed to close message reader", e);
+                }
+            }
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // The message comes from outside, it must not make the parser load anything else.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,67 @@
+package com.db.swift.dfx.service.iso20022;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The values of a pacs.008 message needed to ingest and process it, with their path in the message. A path names the elements
+ * from the root element down, a last segment starting with {@code @} names an attribute. All paths are the same in
+ * every pacs.008 version; the wallet and token elements only exist in versions with the digital currency extensions.
+ */
+public enum Pacs008Field {
+    MSG_ID("GrpHdr/MsgId"),
+    HEADER_INSTRUCTING_AGENT_BIC("GrpHdr/InstgAgt/FinInstnId/BICFI"),
+    INSTR_ID("CdtTrfTxInf/PmtId/InstrId"),
+    END_TO_END_ID("CdtTrfTxInf/PmtId/EndToEndId"),
+    UETR("CdtTrfTxInf/PmtId/UETR"),
+    TX_HASH("CdtTrfTxInf/PmtId/TxHash", true),
+    SETTLEMENT_AMOUNT("CdtTrfTxInf/IntrBkSttlmAmt"),
+    SETTLEMENT_CCY("CdtTrfTxInf/IntrBkSttlmAmt/@Ccy"),
+    INSTRUCTED_AMOUNT("CdtTrfTxInf/InstdAmt"),
+    INSTRUCTED_CCY("CdtTrfTxInf/InstdAmt/@Ccy"),
+    INSTRUCTING_AGENT_BIC("CdtTrfTxInf/InstgAgt/FinInstnId/BICFI"),
+    DEBTOR_NAME("CdtTrfTxInf/Dbtr/Nm"),
+    DEBTOR_ACCOUNT_CCY("CdtTrfTxInf/DbtrAcct/Ccy"),
+    DEBTOR_WALLET("CdtTrfTxInf/DbtrAcct/WalletId/DbtrWalletAddr", true),
+    DEBTOR_NETWORK("CdtTrfTxInf/DbtrAcct/WalletNtwrk/DbtrWalletNtwrk", true),
+    DEBTOR_TOKEN("CdtTrfTxInf/DbtrAcct/TokenId", true),
+    DEBTOR_AGENT_BIC("CdtTrfTxInf/DbtrAgt/FinInstnId/BICFI"),
+    DEBTOR_AGENT_LEI("CdtTrfTxInf/DbtrAgt/FinInstnId/LEI"),
+    CREDITOR_AGENT_BIC("CdtTrfTxInf/CdtrAgt/FinInstnId/BICFI"),
+    CREDITOR_AGENT_LEI("CdtTrfTxInf/CdtrAgt/FinInstnId/LEI"),
+    CREDITOR_NAME("CdtTrfTxInf/Cdtr/Nm"),
+    CREDITOR_ACCOUNT_CCY("CdtTrfTxInf/CdtrAcct/Ccy"),
+    CREDITOR_WALLET("CdtTrfTxInf/CdtrAcct/WalletId/CdtrWalletAddr", true),
+    CREDITOR_NETWORK("CdtTrfTxInf/CdtrAcct/WalletNtwrk/CdtrWalletNtwrk", true),
+    CREDITOR_TOKEN("CdtTrfTxInf/CdtrAcct/TokenId", true);
+
+    /**
+     * The path of the transactions; every transaction of a message starts an element at this path.
+     */
+    static final String TRANSACTION_PATH = "Document/FIToFICstmrCdtTrf/CdtTrfTxInf";
+
+    private final String path;
+    private final boolean digitalCurrencyExtension;
+
+    Pacs008Field(String path) {
+        this(path, false);
+    }
+
+    Pacs008Field(String path, boolean digitalCurrencyExtension) {
+        this.path = "Document/FIToFICstmrCdtTrf/" + path;
+        this.digitalCurrencyExtension = digitalCurrencyExtension;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * The fields of a version without the digital currency extensions.
+     */
+    static Set<Pacs008Field> standardFields() {
+        EnumSet<Pacs008Field> fields = EnumSet.allOf(Pacs008Field.class);
+        fields.removeIf(field -> field.digitalCurrencyExtension);
+        return fields;
+    }
+}
@@ -0,0 +1,57 @@
+package com.db.swift.dfx.service.iso20022;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * The {@link Pacs008Field values} of a pacs.008 message, taken from its first transaction.
+ */
+public final class Pacs008Fields {
+    private static final Pacs008Field[] FIELDS = Pacs008Field.values();
+
+    private final String[] values = new String[FIELDS.length];
+    private int transactions;
+
+    public String get(Pacs008Field field) {
+        return values[field.ordinal()];
+    }
+
+    public BigDecimal getDecimal(Pacs008Field field) {
+        String value = get(field);
+        return value == null ? null : new BigDecimal(value.trim());
+    }
+
+    /**
+     * The number of transactions in the message; the values are only those of the first.
+     */
+    public int getTransactions() {
+        return transactions;
+    }
+
+    void set(Pacs008Field field, String value) {
+        values[field.ordinal()] = value;
+    }
+
+    boolean isSet(Pacs008Field field) {
+        return values[field.ordinal()] != null;
+    }
+
+    void countTransaction() {
+        transactions++;
+    }
+
+    /**
+     * Identifies the transaction by its UETR, which is unique across all messages, or else by its instructing agent,
+     * the ID of the message and its instruction or end to end ID. The key does not depend on the pacs.008 version,
+     * so a transaction resubmitted in another version is still recognized.
+     */
+    public String idempotencyKey() {
+        if (get(Pacs008Field.UETR) != null) {
+            return "UETR:" + get(Pacs008Field.UETR).toLowerCase(Locale.ROOT);
+        }
+        String sender = get(Pacs008Field.INSTRUCTING_AGENT_BIC) != null
+                ? get(Pacs008Field.INSTRUCTING_AGENT_BIC) : get(Pacs008Field.HEADER_INSTRUCTING_AGENT_BIC);
+        return "MSG:" + sender + "/" + get(Pacs008Field.MSG_ID) + "/"
+                + (get(Pacs008Field.INSTR_ID) != null ? get(Pacs008Field.INSTR_ID) : get(Pacs008Field.END_TO_END_ID));
+    }
+}
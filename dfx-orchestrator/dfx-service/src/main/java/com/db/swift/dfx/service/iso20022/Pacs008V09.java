@@ -0,0 +1,150 @@
+package com.db.swift.dfx.service.iso20022;
+
+import com.db.swift.dfx.jaxb.model.pacs008v09.ActiveCurrencyAndAmount;
+import com.db.swift.dfx.jaxb.model.pacs008v09.BranchAndFinancialInstitutionIdentification6;
+import com.db.swift.dfx.jaxb.model.pacs008v09.CreditTransferTransaction43;
+import com.db.swift.dfx.jaxb.model.pacs008v09.Document;
+import com.db.swift.dfx.jaxb.model.pacs008v09.FIToFICustomerCreditTransferV09;
+import com.db.swift.dfx.jaxb.model.pacs008v09.GroupHeader93;
+import com.db.swift.dfx.jaxb.model.pacs008v09.ObjectFactory;
+import com.db.swift.dfx.jaxb.model.pacs008v09.PaymentIdentification13;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import jakarta.xml.bind.JAXBElement;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+
+import static com.db.swift.dfx.service.iso20022.Pacs008Field.*;
+
+/**
+ * pacs.008.001.09, the plain ISO 20022 version without the digital currency extensions: accounts carry no wallet
+ * or token, so messages of this version are always fiat transfers without blockchain details. An account without a
+ * currency is taken to be in the currency of the amount debited or credited from it.
+ */
+@Component
+public class Pacs008V09 extends Pacs008Version<Document, GroupHeader93, CreditTransferTransaction43> {
+    public static final String NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pacs.008.001.09";
+
+    private static final ObjectFactory objectFactory = new ObjectFactory();
+
+    public Pacs008V09() {
+        super(NAMESPACE, "/xsd/pacs.008.001.09.xsd", Document.class, GroupHeader93.class, CreditTransferTransaction43.class,
+                Pacs008Field.standardFields());
+    }
+
+    @Override
+    public String nbOfTxs(GroupHeader93 header) {
+        return header.getNbOfTxs();
+    }
+
+    @Override
+    public String headerMsgId(GroupHeader93 header) {
+        return header.getMsgId();
+    }
+
+    @Override
+    public Document singleTransaction(GroupHeader93 header, CreditTransferTransaction43 transaction) {
+        FIToFICustomerCreditTransferV09 transfer = new FIToFICustomerCreditTransferV09();
+        transfer.setGrpHdr(headerFor(header, transaction));
+        transfer.getCdtTrfTxInf().add(transaction);
+        Document document = new Document();
+        document.setFIToFICstmrCdtTrf(transfer);
+        return document;
+    }
+
+    private static GroupHeader93 headerFor(GroupHeader93 header, CreditTransferTransaction43 transaction) {
+        if ("1".equals(header.getNbOfTxs())) {
+            return header;
+        }
+        GroupHeader93 copy = new GroupHeader93();
+        copy.setMsgId(header.getMsgId());
+        copy.setCreDtTm(header.getCreDtTm());
+        copy.setBtchBookg(header.isBtchBookg());
+        copy.setNbOfTxs("1");
+        ActiveCurrencyAndAmount amount = transaction.getIntrBkSttlmAmt();
+        if (header.getCtrlSum() != null && amount != null) {
+            copy.setCtrlSum(amount.getValue());
+        }
+        if (header.getTtlIntrBkSttlmAmt() != null && amount != null) {
+            copy.setTtlIntrBkSttlmAmt(amount);
+        }
+        copy.setIntrBkSttlmDt(header.getIntrBkSttlmDt());
+        copy.setSttlmInf(header.getSttlmInf());
+        copy.setPmtTpInf(header.getPmtTpInf());
+        copy.setInstgAgt(header.getInstgAgt());
+        copy.setInstdAgt(header.getInstdAgt());
+        return copy;
+    }
+
+    @Override
+    public Pacs008Fields fields(Document transaction) {
+        GroupHeader93 header = transaction.getFIToFICstmrCdtTrf().getGrpHdr();
+        CreditTransferTransaction43 creditTransfer = transaction.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0);
+        PaymentIdentification13 paymentId = creditTransfer.getPmtId();
+        Pacs008Fields fields = new Pacs008Fields();
+        fields.countTransaction();
+        fields.set(MSG_ID, header.getMsgId());
+        fields.set(HEADER_INSTRUCTING_AGENT_BIC, bic(header.getInstgAgt()));
+        fields.set(INSTR_ID, paymentId.getInstrId());
+        fields.set(END_TO_END_ID, paymentId.getEndToEndId());
+        fields.set(UETR, paymentId.getUETR());
+        if (creditTransfer.getIntrBkSttlmAmt() != null) {
+            fields.set(SETTLEMENT_AMOUNT, creditTransfer.getIntrBkSttlmAmt().getValue().toString());
+            fields.set(SETTLEMENT_CCY, creditTransfer.getIntrBkSttlmAmt().getCcy());
+        }
+        if (creditTransfer.getInstdAmt() != null) {
+            fields.set(INSTRUCTED_AMOUNT, creditTransfer.getInstdAmt().getValue().toString());
+            fields.set(INSTRUCTED_CCY, creditTransfer.getInstdAmt().getCcy());
+        }
+        fields.set(INSTRUCTING_AGENT_BIC, bic(creditTransfer.getInstgAgt()));
+        fields.set(DEBTOR_NAME, creditTransfer.getDbtr() != null ? creditTransfer.getDbtr().getNm() : null);
+        fields.set(CREDITOR_NAME, creditTransfer.getCdtr() != null ? creditTransfer.getCdtr().getNm() : null);
+        fields.set(DEBTOR_ACCOUNT_CCY, creditTransfer.getDbtrAcct() != null ? creditTransfer.getDbtrAcct().getCcy() : null);
+        fields.set(DEBTOR_AGENT_BIC, bic(creditTransfer.getDbtrAgt()));
+        fields.set(DEBTOR_AGENT_LEI, lei(creditTransfer.getDbtrAgt()));
+        fields.set(CREDITOR_AGENT_BIC, bic(creditTransfer.getCdtrAgt()));
+        fields.set(CREDITOR_AGENT_LEI, lei(creditTransfer.getCdtrAgt()));
+        fields.set(CREDITOR_ACCOUNT_CCY, creditTransfer.getCdtrAcct() != null ? creditTransfer.getCdtrAcct().getCcy() : null);
+        return fields;
+    }
+
+    private static String bic(BranchAndFinancialInstitutionIdentification6 agent) {
+        return agent != null ? agent.getFinInstnId().getBICFI() : null;
+    }
+
+    private static String lei(BranchAndFinancialInstitutionIdentification6 agent) {
+        return agent != null ? agent.getFinInstnId().getLEI() : null;
+    }
+
+    @Override
+    public JAXBElement<Document> toJaxbElement(Document document) {
+        return objectFactory.createDocument(document);
+    }
+
+    @Override
+    public StoredMessage toStoredMessage(Pacs008Fields fields) {
+        StoredMessage storedMessage = StoredMessage.builder()
+                .creditorAgentBIC(fields.get(CREDITOR_AGENT_BIC))
+                .creditorAgentLEI(fields.get(CREDITOR_AGENT_LEI))
+                .debitorAgentBIC(fields.get(DEBTOR_AGENT_BIC))
+                .debitorAgentLEI(fields.get(DEBTOR_AGENT_LEI))
+                .direction(direction(fields.get(CREDITOR_AGENT_BIC), fields.get(DEBTOR_AGENT_BIC)))
+                .build();
+
+        String settlementCcy = fields.get(SETTLEMENT_CCY);
+        String instructedCcy = fields.get(INSTRUCTED_CCY) != null ? fields.get(INSTRUCTED_CCY) : settlementCcy;
+        storedMessage.setCcy(fields.get(DEBTOR_ACCOUNT_CCY) != null ? fields.get(DEBTOR_ACCOUNT_CCY) : instructedCcy);
+        storedMessage.setTargetCcy(fields.get(CREDITOR_ACCOUNT_CCY) != null ? fields.get(CREDITOR_ACCOUNT_CCY) : settlementCcy);
+        storedMessage.setTargetAmt(fields.getDecimal(SETTLEMENT_AMOUNT));
+
+        BigDecimal instructedAmount = fields.getDecimal(INSTRUCTED_AMOUNT);
+        if (storedMessage.getDirection().equals(StoredMessage.DirectionEnum.INBOUND) && instructedAmount != null) {
+            storedMessage.setFxTradeDate(LocalDate.now());
+            storedMessage.setAmt(instructedAmount);
+            storedMessage.setFxRate(storedMessage.getTargetAmt().divide(instructedAmount, RoundingMode.HALF_UP));
+        }
+        return storedMessage;
+    }
+}
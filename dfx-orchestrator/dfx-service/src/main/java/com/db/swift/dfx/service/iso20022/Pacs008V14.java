@@ -0,0 +1,185 @@
+package com.db.swift.dfx.service.iso20022;
+
+import com.db.swift.dfx.jaxb.model.pacs008.ActiveCurrencyAndAmount;
+import com.db.swift.dfx.jaxb.model.pacs008.BranchAndFinancialInstitutionIdentification8;
+import com.db.swift.dfx.jaxb.model.pacs008.CashAccount40;
+import com.db.swift.dfx.jaxb.model.pacs008.CreditTransferTransaction70;
+import com.db.swift.dfx.jaxb.model.pacs008.Document;
+import com.db.swift.dfx.jaxb.model.pacs008.FIToFICustomerCreditTransferV13;
+import com.db.swift.dfx.jaxb.model.pacs008.GroupHeader131;
+import com.db.swift.dfx.jaxb.model.pacs008.ObjectFactory;
+import com.db.swift.dfx.jaxb.model.pacs008.PaymentIdentification13;
+import com.db.swift.dfx.openapi.model.BlockchainTransactionDetails;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import jakarta.xml.bind.JAXBElement;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.EnumSet;
+
+import static com.db.swift.dfx.service.iso20022.Pacs008Field.*;
+
+/**
+ * pacs.008.001.14, extended with the wallet and token elements of digital currency accounts.
+ */
+@Component
+public class Pacs008V14 extends Pacs008Version<Document, GroupHeader131, CreditTransferTransaction70> {
+    public static final String NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pacs.008.001.14";
+
+    private static final ObjectFactory objectFactory = new ObjectFactory();
+
+    public Pacs008V14() {
+        super(NAMESPACE, "/xsd/pacs.008.001.14.xsd", Document.class, GroupHeader131.class, CreditTransferTransaction70.class,
+                EnumSet.allOf(Pacs008Field.class));
+    }
+
+    @Override
+    public String nbOfTxs(GroupHeader131 header) {
+        return header.getNbOfTxs();
+    }
+
+    @Override
+    public String headerMsgId(GroupHeader131 header) {
+        return header.getMsgId();
+    }
+
+    @Override
+    public Document singleTransaction(GroupHeader131 header, CreditTransferTransaction70 transaction) {
+        FIToFICustomerCreditTransferV13 transfer = new FIToFICustomerCreditTransferV13();
+        transfer.setGrpHdr(headerFor(header, transaction));
+        transfer.getCdtTrfTxInf().add(transaction);
+        Document document = new Document();
+        document.setFIToFICstmrCdtTrf(transfer);
+        return document;
+    }
+
+    private static GroupHeader131 headerFor(GroupHeader131 header, CreditTransferTransaction70 transaction) {
+        if ("1".equals(header.getNbOfTxs())) {
+            return header;
+        }
+        GroupHeader131 copy = new GroupHeader131();
+        copy.setMsgId(header.getMsgId());
+        copy.setCreDtTm(header.getCreDtTm());
+        copy.setXpryDtTm(header.getXpryDtTm());
+        copy.setBtchBookg(header.isBtchBookg());
+        copy.setNbOfTxs("1");
+        ActiveCurrencyAndAmount amount = transaction.getIntrBkSttlmAmt();
+        if (header.getCtrlSum() != null && amount != null) {
+            copy.setCtrlSum(amount.getValue());
+        }
+        if (header.getTtlIntrBkSttlmAmt() != null && amount != null) {
+            copy.setTtlIntrBkSttlmAmt(amount);
+        }
+        copy.setIntrBkSttlmDt(header.getIntrBkSttlmDt());
+        copy.setSttlmInf(header.getSttlmInf());
+        copy.setPmtTpInf(header.getPmtTpInf());
+        copy.setInstgAgt(header.getInstgAgt());
+        copy.setInstdAgt(header.getInstdAgt());
+        return copy;
+    }
+
+    @Override
+    public Pacs008Fields fields(Document transaction) {
+        GroupHeader131 header = transaction.getFIToFICstmrCdtTrf().getGrpHdr();
+        CreditTransferTransaction70 creditTransfer = transaction.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0);
+        PaymentIdentification13 paymentId = creditTransfer.getPmtId();
+        Pacs008Fields fields = new Pacs008Fields();
+        fields.countTransaction();
+        fields.set(MSG_ID, header.getMsgId());
+        fields.set(HEADER_INSTRUCTING_AGENT_BIC, bic(header.getInstgAgt()));
+        fields.set(INSTR_ID, paymentId.getInstrId());
+        fields.set(END_TO_END_ID, paymentId.getEndToEndId());
+        fields.set(UETR, paymentId.getUETR());
+        fields.set(TX_HASH, paymentId.getTxHash());
+        if (creditTransfer.getIntrBkSttlmAmt() != null) {
+            fields.set(SETTLEMENT_AMOUNT, creditTransfer.getIntrBkSttlmAmt().getValue().toString());
+            fields.set(SETTLEMENT_CCY, creditTransfer.getIntrBkSttlmAmt().getCcy());
+        }
+        if (creditTransfer.getInstdAmt() != null) {
+            fields.set(INSTRUCTED_AMOUNT, creditTransfer.getInstdAmt().getValue().toString());
+            fields.set(INSTRUCTED_CCY, creditTransfer.getInstdAmt().getCcy());
+        }
+        fields.set(INSTRUCTING_AGENT_BIC, bic(creditTransfer.getInstgAgt()));
+        fields.set(DEBTOR_NAME, creditTransfer.getDbtr() != null ? creditTransfer.getDbtr().getNm() : null);
+        fields.set(CREDITOR_NAME, creditTransfer.getCdtr() != null ? creditTransfer.getCdtr().getNm() : null);
+        CashAccount40 debtorAccount = creditTransfer.getDbtrAcct();
+        if (debtorAccount != null) {
+            fields.set(DEBTOR_ACCOUNT_CCY, debtorAccount.getCcy());
+            fields.set(DEBTOR_WALLET, debtorAccount.getWalletId() != null ? debtorAccount.getWalletId().getDbtrWalletAddr() : null);
+            fields.set(DEBTOR_NETWORK, debtorAccount.getWalletNtwrk() != null ? debtorAccount.getWalletNtwrk().getDbtrWalletNtwrk() : null);
+            fields.set(DEBTOR_TOKEN, debtorAccount.getTokenId());
+        }
+        fields.set(DEBTOR_AGENT_BIC, bic(creditTransfer.getDbtrAgt()));
+        fields.set(DEBTOR_AGENT_LEI, lei(creditTransfer.getDbtrAgt()));
+        fields.set(CREDITOR_AGENT_BIC, bic(creditTransfer.getCdtrAgt()));
+        fields.set(CREDITOR_AGENT_LEI, lei(creditTransfer.getCdtrAgt()));
+        CashAccount40 creditorAccount = creditTransfer.getCdtrAcct();
+        if (creditorAccount != null) {
+            fields.set(CREDITOR_ACCOUNT_CCY, creditorAccount.getCcy());
+            fields.set(CREDITOR_WALLET, creditorAccount.getWalletId() != null ? creditorAccount.getWalletId().getCdtrWalletAddr() : null);
+            fields.set(CREDITOR_NETWORK, creditorAccount.getWalletNtwrk() != null ? creditorAccount.getWalletNtwrk().getCdtrWalletNtwrk() : null);
+            fields.set(CREDITOR_TOKEN, creditorAccount.getTokenId());
+        }
+        return fields;
+    }
+
+    private static String bic(BranchAndFinancialInstitutionIdentification8 agent) {
+        return agent != null ? agent.getFinInstnId().getBICFI() : null;
+    }
+
+    private static String lei(BranchAndFinancialInstitutionIdentification8 agent) {
+        return agent != null ? agent.getFinInstnId().getLEI() : null;
+    }
+
+    @Override
+    public JAXBElement<Document> toJaxbElement(Document document) {
+        return objectFactory.createDocument(document);
+    }
+
+    @Override
+    public StoredMessage toStoredMessage(Pacs008Fields fields) {
+        StoredMessage storedMessage = StoredMessage.builder()
+                .creditorAgentBIC(fields.get(CREDITOR_AGENT_BIC))
+                .creditorAgentLEI(fields.get(CREDITOR_AGENT_LEI))
+                .debitorAgentBIC(fields.get(DEBTOR_AGENT_BIC))
+                .debitorAgentLEI(fields.get(DEBTOR_AGENT_LEI))
+                .direction(direction(fields.get(CREDITOR_AGENT_BIC), fields.get(DEBTOR_AGENT_BIC)))
+                .build();
+
+        if (fields.get(DEBTOR_TOKEN) != null) {
+            storedMessage.setDebitorWallet(fields.get(DEBTOR_WALLET));
+            storedMessage.setDebitorNetwork(fields.get(DEBTOR_NETWORK));
+            storedMessage.setCcy(fields.get(DEBTOR_TOKEN));
+        } else {
+            storedMessage.setCcy(fields.get(DEBTOR_ACCOUNT_CCY));
+        }
+
+        if (fields.get(CREDITOR_TOKEN) != null) {
+            storedMessage.setCreditorWallet(fields.get(CREDITOR_WALLET));
+            storedMessage.setCreditorNetwork(fields.get(CREDITOR_NETWORK));
+            storedMessage.setTargetCcy(fields.get(CREDITOR_TOKEN));
+        } else {
+            storedMessage.setTargetCcy(fields.get(CREDITOR_ACCOUNT_CCY));
+        }
+        storedMessage.setTargetAmt(fields.getDecimal(SETTLEMENT_AMOUNT));
+
+        if (storedMessage.getDirection().equals(StoredMessage.DirectionEnum.INBOUND)) {
+            BigDecimal instructedAmount = fields.getDecimal(INSTRUCTED_AMOUNT);
+            if (instructedAmount == null) {
+                throw new IllegalStateException("Inbound message without instructed amount, the FX rate is unknown");
+            }
+            storedMessage.setFxTradeDate(LocalDate.now());
+            storedMessage.setAmt(instructedAmount);
+            storedMessage.setFxRate(storedMessage.getTargetAmt().divide(instructedAmount, RoundingMode.HALF_UP));
+        }
+
+        storedMessage.setBlckchnDetails(BlockchainTransactionDetails.builder()
+                .network(fields.get(DEBTOR_NETWORK))
+                .token(fields.get(DEBTOR_TOKEN))
+                .txId(fields.get(TX_HASH))
+                .build());
+        return storedMessage;
+    }
+}
@@ -0,0 +1,123 @@
+package com.db.swift.dfx.service.iso20022;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
+import com.db.swift.dfx.service.utils.XsdSchemaRegistry;
+import jakarta.xml.bind.JAXBElement;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.xml.sax.SAXException;
+
+import javax.xml.validation.Schema;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Set;
+
+import static com.db.swift.dfx.service.constants.DfxConstants.DB_LEGAL_NAME;
+
+/**
+ * A version of the pacs.008 message accepted by the service: its namespace, its schema, the JAXB classes generated
+ * from the schema and the version-specific parts of splitting a message and mapping it to a {@link StoredMessage}.
+ * <p>
+ * A message is mapped from its {@link Pacs008Fields}, which are either read directly from the XML by a streaming
+ * extractor compiled from the paths of the fields, or taken from the unmarshalled document.
+ * <p>
+ * Messages are routed to their version by the namespace of the root element, see {@link MessageRouter}. The JAXB
+ * context of the document class and the compiled schema are cached by {@link JaxbMarshallingUtil} and
+ * {@link XsdSchemaRegistry}, so a routed message is parsed once, with the classes of its version.
+ *
+ * @param <D> The document class.
+ * @param <H> The group header class.
+ * @param <T> The credit transfer transaction class.
+ */
+@Getter
+public abstract class Pacs008Version<D, H, T> {
+    private static final String DB_BIC = "DEUTDEFFXXX";
+
+    private final String namespace;
+    private final String xsdPath;
+    private final Class<D> documentClass;
+    private final Class<H> headerClass;
+    private final Class<T> transactionClass;
+    @Getter(AccessLevel.NONE)
+    private final FieldExtractor fieldExtractor;
+
+    protected Pacs008Version(String namespace, String xsdPath, Class<D> documentClass, Class<H> headerClass,
+                             Class<T> transactionClass, Set<Pacs008Field> fields) {
+        this.namespace = namespace;
+        this.xsdPath = xsdPath;
+        this.documentClass = documentClass;
+        this.headerClass = headerClass;
+        this.transactionClass = transactionClass;
+        this.fieldExtractor = new FieldExtractor(fields);
+    }
+
+    /**
+     * Reads the fields of a message without unmarshalling it.
+     *
+     * @param xml    The message.
+     * @param schema The compiled schema of the version to validate the message against in the same pass, or null.
+     * @return The fields of the first transaction and the number of transactions.
+     * @throws SAXException if the message is not well-formed or does not match the schema.
+     */
+    public Pacs008Fields extractFields(InputStream xml, Schema schema) throws SAXException, IOException {
+        return fieldExtractor.extract(xml, schema);
+    }
+
+    /**
+     * The number of transactions announced by a group header.
+     */
+    public abstract String nbOfTxs(H header);
+
+    /**
+     * The message ID of a group header.
+     */
+    public abstract String headerMsgId(H header);
+
+    /**
+     * Builds the message of a single transaction of a split message. Unless the message held only that transaction,
+     * the group header is copied with the number of transactions and sums adjusted to it.
+     */
+    public abstract D singleTransaction(H header, T transaction);
+
+    /**
+     * Takes the fields of an unmarshalled single-transaction message.
+     */
+    public abstract Pacs008Fields fields(D transaction);
+
+    public abstract JAXBElement<D> toJaxbElement(D document);
+
+    /**
+     * Maps the fields of a single-transaction message to a new {@link StoredMessage}. Only the fields taken from the
+     * message are set; the ID, timestamps, status, audit trail and payload are up to the caller.
+     *
+     * @throws IllegalStateException if the message is neither sent nor received by the bank.
+     */
+    public abstract StoredMessage toStoredMessage(Pacs008Fields fields);
+
+    protected static StoredMessage.DirectionEnum direction(String creditorAgentBic, String debtorAgentBic) {
+        if (DB_BIC.equals(creditorAgentBic)) {
+            return StoredMessage.DirectionEnum.INBOUND;
+        } else if (DB_BIC.equals(debtorAgentBic)) {
+            return StoredMessage.DirectionEnum.OUTBOUND;
+        }
+        throw new IllegalStateException(DB_LEGAL_NAME + " is neither Debitor nor Creditor Agent. Aborting...");
+    }
+
+    /**
+     * The details of a transaction needed to create its FX trade instruction.
+     *
+     * @param settlementAmount The interbank settlement amount, in the currency the creditor receives.
+     */
+    public record TransferDetails(String instrId, String debtorName, String debtorAgentLei, String creditorName,
+                                  String creditorAgentLei, BigDecimal settlementAmount) {
+
+        public static TransferDetails of(Pacs008Fields fields) {
+            return new TransferDetails(fields.get(Pacs008Field.INSTR_ID),
+                    fields.get(Pacs008Field.DEBTOR_NAME), fields.get(Pacs008Field.DEBTOR_AGENT_LEI),
+                    fields.get(Pacs008Field.CREDITOR_NAME), fields.get(Pacs008Field.CREDITOR_AGENT_LEI),
+                    fields.getDecimal(Pacs008Field.SETTLEMENT_AMOUNT));
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package com.db.swift.dfx.service.listeners;
 
 import com.db.swift.dfx.service.events.LEIVerificationSuccessfulEvent;
-import com.db.swift.dfx.service.services.BlockchainValidationService;
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -13,16 +12,11 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class BlockchainValidationListener {
 
-    private final BlockchainValidationService validationService;
+    private final ProcessingPipeline pipeline;
 
-    @Async
     @EventListener
     public void handleBlockchainValidation(LEIVerificationSuccessfulEvent event) {
-        log.info("Asynchronously handling blockchain validation for messageId: {}", event.getMessageId());
-        try {
-            validationService.validateTransaction(event.getMessageId());
-        } catch (Exception e) {
-            log.error("An unexpected error occurred during asynchronous blockchain validation for messageId: {}", event.getMessageId(), e);
-        }
+        log.info("Queueing blockchain validation for messageId: {}", event.getMessageId());
+        pipeline.getBlockchainValidation().submit(event.getContext());
     }
-}
\ No newline at end of file
+}
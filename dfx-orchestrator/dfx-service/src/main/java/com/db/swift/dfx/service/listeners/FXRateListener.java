@@ -1,12 +1,11 @@
 package com.db.swift.dfx.service.listeners;
 
 import com.db.swift.dfx.service.events.BlockchainValidationSuccessfulEvent;
-import com.db.swift.dfx.service.services.FXService;
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
 import lombok.extern.slf4j.Slf4j;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 
@@ -15,24 +14,17 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class FXRateListener {
 
-    private final FXService fxService;
+    private final ProcessingPipeline pipeline;
 
     /**
-     * Handles the LEIVerificationSuccessfulEvent asynchronously to trigger FX rate retrieval.
-     * The @Async annotation ensures this method runs in a background thread pool.
+     * Handles the BlockchainValidationSuccessfulEvent by handing the message to the FX creation stage of the
+     * pipeline.
      *
-     * @param event The event containing the ID of the message for which LEI verification was successful.
+     * @param event The event containing the ID of the message for which blockchain validation was successful.
      */
-    @Async
     @EventListener
     public void handleFxRateCreation(BlockchainValidationSuccessfulEvent event) {
-        log.info("Asynchronously handling FX conversion creation for messageId: {}", event.getMessageId());
-        try {
-            fxService.handleFxTradeCreation(event.getMessageId());
-        } catch (Exception e) {
-            // Catching all exceptions to prevent the async thread from dying silently.
-            log.error("An unexpected error occurred during asynchronous FX conversion creation for messageId: {}", event.getMessageId(), e);
-        }
-
+        log.info("Queueing FX conversion creation for messageId: {}", event.getMessageId());
+        pipeline.getFxCreation().submit(event.getContext());
     }
 }
@@ -1,11 +1,10 @@
 package com.db.swift.dfx.service.listeners;
 
 import com.db.swift.dfx.service.events.MessageStoredEvent;
-import com.db.swift.dfx.service.services.VerificationService;
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -13,23 +12,18 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class LEIVerificationListener {
 
-    private final VerificationService verificationService;
+    private final ProcessingPipeline pipeline;
 
     /**
-     * Handles the MessageStoredEvent asynchronously to trigger LEI verification.
-     * The @Async annotation ensures this method runs in a background thread pool.
+     * Handles the MessageStoredEvent by handing the message to the LEI verification stage of the pipeline,
+     * which verifies it on one of its own workers. The event is published by the thread that stored the message,
+     * often a request thread, so the hand-off never waits for room in the stage.
      *
      * @param event The event containing the ID of the message to verify.
      */
-    @Async
     @EventListener
     public void handleMessageVerification(MessageStoredEvent event) {
-        log.info("Asynchronously handling LEI verification for messageId: {}", event.getMessageId());
-        try {
-            verificationService.verifyLeisForMessage(event.getMessageId());
-        } catch (Exception e) {
-            // Catching all exceptions to prevent the async thread from dying silently.
-            log.error("An unexpected error occurred during asynchronous LEI verification for messageId: {}", event.getMessageId(), e);
-        }
+        log.info("Queueing LEI verification for messageId: {}", event.getMessageId());
+        pipeline.start(event.getContext());
     }
-}
\ No newline at end of file
+}
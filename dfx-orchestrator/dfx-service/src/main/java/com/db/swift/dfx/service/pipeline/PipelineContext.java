@@ -0,0 +1,60 @@
+package com.db.swift.dfx.service.pipeline;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.iso20022.Pacs008Fields;
+import lombok.Getter;
+
+/**
+ * A message on its way through the {@link ProcessingPipeline}: the working copy of its {@link StoredMessage} and the
+ * fields of its pacs.008 payload. The context is handed from stage to stage, so the stages neither read the message
+ * from storage nor parse its payload again, and only one stage works on it at a time.
+ * <p>
+ * A stage changes the working copy and {@link #markChanged() marks} it as changed instead of writing it; the pipeline
+ * writes the changes of the stages, with their complete audit trail, at the boundaries configured by
+ * {@code dfx.pipeline.commit}.
+ */
+@Getter
+public class PipelineContext {
+
+    private final String messageId;
+    private StoredMessage message;
+    private Pacs008Fields fields;
+    private boolean changed;
+
+    /**
+     * @param message The message as it was stored.
+     * @param fields  The fields of its payload, or null to read them from the payload when needed.
+     */
+    public PipelineContext(StoredMessage message, Pacs008Fields fields) {
+        this.messageId = message.getMessageId();
+        this.message = message;
+        this.fields = fields;
+    }
+
+    /**
+     * A context for a stored message that is not at hand, e.g. one resumed after a restart. The message is read from
+     * storage before the first stage works on it.
+     */
+    public PipelineContext(String messageId) {
+        this.messageId = messageId;
+    }
+
+    /**
+     * Records that the working copy has changes to be written.
+     */
+    public void markChanged() {
+        changed = true;
+    }
+
+    public void setFields(Pacs008Fields fields) {
+        this.fields = fields;
+    }
+
+    void setMessage(StoredMessage message) {
+        this.message = message;
+    }
+
+    void committed() {
+        changed = false;
+    }
+}
@@ -0,0 +1,275 @@
+package com.db.swift.dfx.service.pipeline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A step of the message processing with its own workers and its own bounded queue, so a slow step only holds up the
+ * messages waiting for it, never the threads of the other steps.
+ * <p>
+ * The stage is partitioned into shards by the hash of the message ID. Every shard is a mailbox that processes its
+ * messages one after the other, while different shards are processed in parallel by the workers of the stage. A
+ * mailbox holds no thread of its own: while it has messages, it is run by one worker at a time, which hands the
+ * worker back after a few messages so the other mailboxes get their turn. A message waits behind the messages of its
+ * own shard only, even when other shards are idle.
+ * <p>
+ * The workers are either a fixed pool of platform threads, one per shard, or, with {@code dfx.virtual-threads=true},
+ * a new virtual thread for every turn of a mailbox; a stage of virtual threads can be given thousands of shards, as a
+ * mailbox blocked on the GLEIF API costs little more than the message it holds.
+ * <p>
+ * Each stage reports its queue depth, busy workers and the messages it rejected, tagged with the name of the stage;
+ * every mailbox its depth and the time its messages wait and are processed, tagged with the stage and the number of
+ * the shard. The number of shards of a stage is fixed, so the meters of a stage are too.
+ */
+@Slf4j
+public class PipelineStage {
+
+    /**
+     * Messages a mailbox processes before it hands its worker back.
+     */
+    private static final int MAILBOX_BATCH = 32;
+    private static final long BLOCK_POLL_MILLIS = 100;
+
+    @Getter
+    private final String name;
+    private final Consumer<PipelineContext> handler;
+    private final RejectionPolicy rejectionPolicy;
+    private final ExecutorService workers;
+    private final Mailbox[] mailboxes;
+    private final int capacity;
+    private final Semaphore room;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter rejectedCounter;
+    private volatile boolean shutdown;
+
+    /**
+     * @param name            The name of the stage.
+     * @param handler         Processes a message.
+     * @param concurrency     The number of shards.
+     * @param capacity        The number of messages that can wait in the mailboxes of the stage.
+     * @param rejectionPolicy What to do with a message while the stage is full.
+     * @param workers         Runs the mailboxes; shut down with the stage.
+     */
+    public PipelineStage(String name, Consumer<PipelineContext> handler, int concurrency, int capacity,
+                         RejectionPolicy rejectionPolicy, ExecutorService workers, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.handler = handler;
+        this.rejectionPolicy = rejectionPolicy;
+        this.workers = workers;
+        this.mailboxes = new Mailbox[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            mailboxes[i] = new Mailbox(String.valueOf(i), meterRegistry);
+        }
+        this.capacity = capacity;
+        this.room = new Semaphore(capacity);
+        Gauge.builder("dfx.pipeline.stage.queue.depth", this, PipelineStage::queued)
+                .tag("stage", name)
+                .description("Messages waiting for a worker of the stage")
+                .register(meterRegistry);
+        Gauge.builder("dfx.pipeline.stage.active", active, AtomicInteger::get)
+                .tag("stage", name)
+                .description("Workers of the stage processing a message")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("dfx.pipeline.stage.rejected")
+                .tag("stage", name)
+                .description("Messages handed to the stage while its queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hands a message to the stage if it has room, without waiting.
+     *
+     * @param context The message.
+     * @return false if the stage is full and the message was not taken.
+     */
+    public boolean offer(PipelineContext context) {
+        if (shutdown) {
+            log.warn("Stage {} is shut down, messageId {} is not processed", name, context.getMessageId());
+            return true;
+        }
+        if (!room.tryAcquire()) {
+            return false;
+        }
+        Mailbox mailbox = mailboxOf(context.getMessageId());
+        mailbox.post(new Task(context, mailbox, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * The number of messages the stage can still take.
+     */
+    public int remainingCapacity() {
+        return room.availablePermits();
+    }
+
+    /**
+     * Hands a message to the stage. Returns once the message is queued, or, depending on the rejection policy of a
+     * full stage, once it is processed or discarded. Returns without the message being processed once the stage is
+     * shut down.
+     *
+     * @param context The message.
+     */
+    public void submit(PipelineContext context) {
+        String messageId = context.getMessageId();
+        if (offer(context)) {
+            return;
+        }
+        rejectedCounter.increment();
+        switch (rejectionPolicy) {
+            case BLOCK -> {
+                try {
+                    while (!room.tryAcquire(BLOCK_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (shutdown) {
+                            log.warn("Stage {} is shut down, messageId {} is not processed", name, messageId);
+                            return;
+                        }
+                    }
+                    Mailbox mailbox = mailboxOf(messageId);
+                    mailbox.post(new Task(context, mailbox, System.nanoTime()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.error("Interrupted while waiting for stage {}, messageId {} is not processed", name, messageId);
+                }
+            }
+            // The message is still only worked on by one thread: it is in no other mailbox or stage meanwhile.
+            case CALLER_RUNS -> new Task(context, mailboxOf(messageId), System.nanoTime()).run();
+            case DISCARD -> log.error("Stage {} is full, messageId {} is not processed", name, messageId);
+        }
+    }
+
+    private Mailbox mailboxOf(String messageId) {
+        int hash = messageId.hashCode();
+        // Spread the higher bits, as String hash codes of UUIDs differ mostly in those.
+        hash ^= (hash >>> 16);
+        return mailboxes[Math.floorMod(hash, mailboxes.length)];
+    }
+
+    private int queued() {
+        return capacity - room.availablePermits();
+    }
+
+    /**
+     * Stops the workers, interrupting the messages they are processing.
+     *
+     * @return The number of messages that were still queued and are not processed.
+     */
+    int shutdown() {
+        shutdown = true;
+        workers.shutdownNow();
+        int queued = 0;
+        for (Mailbox mailbox : mailboxes) {
+            queued += mailbox.depth.get();
+        }
+        return queued;
+    }
+
+    /**
+     * The messages of one shard. It is handed to a worker whenever it receives a message while not already handed to
+     * one, so at most one worker processes its messages at a time, in the order they were posted.
+     */
+    private final class Mailbox implements Runnable {
+
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final Timer waitTimer;
+        private final Timer processingTimer;
+
+        Mailbox(String shard, MeterRegistry meterRegistry) {
+            Gauge.builder("dfx.pipeline.shard.queue.depth", depth, AtomicInteger::get)
+                    .tags("stage", name, "shard", shard)
+                    .description("Messages waiting in the mailbox of a shard")
+                    .register(meterRegistry);
+            this.waitTimer = Timer.builder("dfx.pipeline.shard.wait")
+                    .tags("stage", name, "shard", shard)
+                    .description("Time from handing a message to a shard until a worker takes it")
+                    .register(meterRegistry);
+            this.processingTimer = Timer.builder("dfx.pipeline.shard.processing")
+                    .tags("stage", name, "shard", shard)
+                    .description("Time a worker spends on a message of a shard")
+                    .register(meterRegistry);
+        }
+
+        void post(Task task) {
+            depth.incrementAndGet();
+            tasks.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Only once the stage is shut down; the messages left in the mailbox are reported by shutdown().
+                scheduled.set(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAILBOX_BATCH && !shutdown; i++) {
+                    Task task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                    room.release();
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                // A message posted after the last poll found the mailbox still scheduled.
+                if (!tasks.isEmpty() && !shutdown) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private final class Task implements Runnable {
+
+        private final PipelineContext context;
+        private final Mailbox mailbox;
+        private final long submittedNanos;
+
+        Task(PipelineContext context, Mailbox mailbox, long submittedNanos) {
+            this.context = context;
+            this.mailbox = mailbox;
+            this.submittedNanos = submittedNanos;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            mailbox.waitTimer.record(startNanos - submittedNanos, TimeUnit.NANOSECONDS);
+            active.incrementAndGet();
+            try {
+                handler.accept(context);
+            } catch (Exception e) {
+                // Catching all exceptions so a failing message does not take the mailbox with it.
+                log.error("An unexpected error occurred in stage {} for messageId: {}", name, context.getMessageId(), e);
+            } finally {
+                active.decrementAndGet();
+                mailbox.processingTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
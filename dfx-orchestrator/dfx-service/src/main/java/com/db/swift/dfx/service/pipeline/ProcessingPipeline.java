@@ -0,0 +1,282 @@
+package com.db.swift.dfx.service.pipeline;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.events.BlockchainValidationSuccessfulEvent;
+import com.db.swift.dfx.service.events.LEIVerificationSuccessfulEvent;
+import com.db.swift.dfx.service.services.BlockchainValidationService;
+import com.db.swift.dfx.service.services.FXService;
+import com.db.swift.dfx.service.services.MessageStorageService;
+import com.db.swift.dfx.service.services.VerificationService;
+import com.db.swift.dfx.service.utils.VirtualThreads;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The stages a stored message goes through: LEI verification, blockchain validation and FX trade creation. A stage
+ * hands a message on to the next one by publishing its success event, which the listeners submit to the next stage.
+ * <p>
+ * Every stage has its own workers and bounded queue, configured under {@code dfx.pipeline.<stage>}. A slow GLEIF API
+ * fills up the queue of the LEI verification only; the rejection policy of a stage decides whether a full queue
+ * slows down whoever hands it messages, or drops them. Within a stage a message goes to the mailbox picked by the
+ * hash of its ID, which processes its messages one at a time. As the message is handed from stage to stage, only
+ * one thread ever works on it at a time.
+ * <p>
+ * Newly stored messages are handed to the first stage by {@link #start(PipelineContext)}, which never waits, as it
+ * runs on the thread that stored the message, often a request thread. Messages the first stage can not take right
+ * away are handed on by a background thread; callers check {@link #isAccepting()} and push back on their clients
+ * instead of storing more messages while the first stage is full.
+ * <p>
+ * The message travels as a {@link PipelineContext}, so it is read from storage at most once. The stages only change
+ * the context; the pipeline writes the changes once a stage is done ({@code dfx.pipeline.commit=stage}), or only
+ * once the message leaves the pipeline, completed or failed ({@code dfx.pipeline.commit=final}). The next stage is
+ * only handed the message after the write, so it always continues from the persisted version.
+ * <p>
+ * The stage every unfinished message waits for is kept in its {@link StoredMessage#getPipelineStage() record}, and
+ * written with the changes of the stage before it, so it never points past the stored state of the message. On
+ * startup the unfinished messages are handed to their stages again, while messages that completed or failed are
+ * never processed again.
+ */
+@Component
+@Slf4j
+@Getter
+public class ProcessingPipeline {
+
+    @Getter(AccessLevel.NONE)
+    private final MessageStorageService messageStorageService;
+    @Getter(AccessLevel.NONE)
+    private final ApplicationEventPublisher eventPublisher;
+    @Getter(AccessLevel.NONE)
+    private final boolean commitEachStage;
+    private final PipelineStage leiVerification;
+    private final PipelineStage blockchainValidation;
+    private final PipelineStage fxCreation;
+    @Getter(AccessLevel.NONE)
+    private final List<PipelineStage> stages;
+    @Getter(AccessLevel.NONE)
+    private final BlockingQueue<PipelineContext> handoff = new LinkedBlockingQueue<>();
+    @Getter(AccessLevel.NONE)
+    private final Thread handoffThread;
+
+    public ProcessingPipeline(VerificationService verificationService,
+                              BlockchainValidationService blockchainValidationService,
+                              FXService fxService,
+                              MessageStorageService messageStorageService,
+                              ApplicationEventPublisher eventPublisher,
+                              @Value("${dfx.pipeline.commit:stage}") String commit,
+                              @Value("${dfx.pipeline.lei-verification.concurrency:8}") int leiConcurrency,
+                              @Value("${dfx.pipeline.lei-verification.capacity:1000}") int leiCapacity,
+                              @Value("${dfx.pipeline.lei-verification.rejection-policy:BLOCK}") RejectionPolicy leiRejectionPolicy,
+                              @Value("${dfx.pipeline.blockchain-validation.concurrency:2}") int blockchainConcurrency,
+                              @Value("${dfx.pipeline.blockchain-validation.capacity:1000}") int blockchainCapacity,
+                              @Value("${dfx.pipeline.blockchain-validation.rejection-policy:BLOCK}") RejectionPolicy blockchainRejectionPolicy,
+                              @Value("${dfx.pipeline.fx-creation.concurrency:2}") int fxConcurrency,
+                              @Value("${dfx.pipeline.fx-creation.capacity:1000}") int fxCapacity,
+                              @Value("${dfx.pipeline.fx-creation.rejection-policy:BLOCK}") RejectionPolicy fxRejectionPolicy,
+                              @Value("${dfx.virtual-threads:false}") boolean virtualThreads,
+                              MeterRegistry meterRegistry) {
+        this.messageStorageService = messageStorageService;
+        this.eventPublisher = eventPublisher;
+        this.commitEachStage = !"final".equalsIgnoreCase(commit);
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            log.warn("Virtual threads are not supported by Java {}, the pipeline stages use platform threads",
+                    Runtime.version().feature());
+        }
+        this.leiVerification = new PipelineStage("lei-verification",
+                step(0, verificationService::verifyLeisForMessage, context -> new LEIVerificationSuccessfulEvent(this, context)),
+                leiConcurrency, leiCapacity, leiRejectionPolicy,
+                workers("lei-verification", leiConcurrency, virtualThreads), meterRegistry);
+        this.blockchainValidation = new PipelineStage("blockchain-validation",
+                step(1, blockchainValidationService::validateTransaction, context -> new BlockchainValidationSuccessfulEvent(this, context)),
+                blockchainConcurrency, blockchainCapacity, blockchainRejectionPolicy,
+                workers("blockchain-validation", blockchainConcurrency, virtualThreads), meterRegistry);
+        this.fxCreation = new PipelineStage("fx-creation",
+                step(2, fxService::handleFxTradeCreation, null),
+                fxConcurrency, fxCapacity, fxRejectionPolicy,
+                workers("fx-creation", fxConcurrency, virtualThreads), meterRegistry);
+        this.stages = List.of(leiVerification, blockchainValidation, fxCreation);
+        Gauge.builder("dfx.pipeline.handoff.pending", handoff, BlockingQueue::size)
+                .description("Stored messages waiting for room in the first stage")
+                .register(meterRegistry);
+        this.handoffThread = new Thread(this::handOff, "pipeline-handoff");
+        this.handoffThread.setDaemon(true);
+        this.handoffThread.start();
+    }
+
+    /**
+     * Hands a newly stored message to the first stage without waiting. If the stage is full, the message is handed
+     * on by a background thread once it has room, according to the rejection policy of the stage.
+     */
+    public void start(PipelineContext context) {
+        if (!handoff.isEmpty() || !leiVerification.offer(context)) {
+            handoff.add(context);
+        }
+    }
+
+    /**
+     * Whether the first stage takes new messages without delay. Callers storing messages on a request thread answer
+     * with 429 Too Many Requests otherwise.
+     */
+    public boolean isAccepting() {
+        return handoff.isEmpty() && leiVerification.remainingCapacity() > 0;
+    }
+
+    private void handOff() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                leiVerification.submit(handoff.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands the messages left unfinished by the previous run to the stages they were waiting for. They are handed
+     * on by a background thread, so more messages than fit into the queues of the stages do not block the startup,
+     * and are processed in parallel by the mailboxes of the stages.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        Map<String, Integer> pending = messageStorageService.findPipelineStages();
+        if (pending.isEmpty()) {
+            return;
+        }
+        log.info("Resuming {} unfinished message(s)", pending.size());
+        Thread recovery = new Thread(() -> pending.forEach((messageId, stage) -> {
+            if (stage >= 0 && stage < stages.size()) {
+                stages.get(stage).submit(new PipelineContext(messageId));
+            } else {
+                log.error("Message {} waits for unknown pipeline stage {}, not resuming it", messageId, stage);
+            }
+        }), "pipeline-recovery");
+        recovery.setDaemon(true);
+        recovery.start();
+    }
+
+    /**
+     * Runs a step on a message, writes its changes and hands the message on to the next stage if the step succeeded.
+     *
+     * The next stage is written together with the changes of the step, and cleared once the message completed or
+     * failed. If the step throws, the changes it made so far are still written, the message keeps waiting for the
+     * stage and the step runs again after a restart. A failure to write them is added to the exception of the step
+     * rather than replacing it.
+     *
+     * @param stage The position of the stage in the pipeline.
+     * @param step  Processes the message, returns false if it failed and must not go on.
+     * @param next  Creates the event handing the message to the next stage, or null for the last stage.
+     */
+    private Consumer<PipelineContext> step(int stage, Predicate<PipelineContext> step,
+                                           Function<PipelineContext, ApplicationEvent> next) {
+        return context -> {
+            if (!load(context)) {
+                return;
+            }
+            boolean passed;
+            try {
+                passed = step.test(context);
+            } catch (RuntimeException e) {
+                try {
+                    commit(context);
+                } catch (RuntimeException commitFailure) {
+                    e.addSuppressed(commitFailure);
+                }
+                throw e;
+            }
+            boolean handOn = passed && next != null;
+            // With dfx.pipeline.commit=final this is only written at the end, and a restart begins from the last
+            // stage whose changes were written.
+            context.getMessage().setPipelineStage(handOn ? stage + 1 : null);
+            context.markChanged();
+            if (commitEachStage || !handOn) {
+                commit(context);
+            }
+            if (handOn) {
+                eventPublisher.publishEvent(next.apply(context));
+            }
+        };
+    }
+
+    /**
+     * Reads the message of a context that was resumed without it.
+     *
+     * @return false if the message does not exist or is already completed or failed.
+     */
+    private boolean load(PipelineContext context) {
+        if (context.getMessage() != null) {
+            return true;
+        }
+        Optional<StoredMessage> message = messageStorageService.findMessageById(context.getMessageId());
+        if (message.isEmpty()) {
+            log.error("Could not find message with ID {} to process.", context.getMessageId());
+            return false;
+        }
+        StoredMessage.TransactionStatusEnum status = message.get().getTransactionStatus();
+        if (status == StoredMessage.TransactionStatusEnum.COMPLETED || status == StoredMessage.TransactionStatusEnum.FAILED) {
+            log.info("Message with ID {} is already {}, not processing it again.", context.getMessageId(), status);
+            return false;
+        }
+        context.setMessage(message.get());
+        return true;
+    }
+
+    private void commit(PipelineContext context) {
+        if (context.isChanged()) {
+            messageStorageService.updateMessage(context.getMessage());
+            context.committed();
+        }
+    }
+
+    /**
+     * The workers running the mailboxes of a stage: a new virtual thread for every turn of a mailbox, as virtual
+     * threads are not meant to be pooled, or a platform thread per mailbox.
+     */
+    private static ExecutorService workers(String stage, int concurrency, boolean virtualThreads) {
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                    VirtualThreads.factory(stage + "-"));
+        }
+        return new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                VirtualThreads.platformFactory(stage + "-"));
+    }
+
+    /**
+     * Stops the stages. Messages still queued keep the status and the next stage of the last stage they completed,
+     * so they are resumed on the next start.
+     */
+    @PreDestroy
+    public void shutdown() {
+        handoffThread.interrupt();
+        if (!handoff.isEmpty()) {
+            log.warn("Pipeline stopped with {} stored message(s) not yet handed to the first stage", handoff.size());
+        }
+        for (PipelineStage stage : stages) {
+            int dropped = stage.shutdown();
+            if (dropped > 0) {
+                log.warn("Stage {} stopped with {} message(s) still queued", stage.getName(), dropped);
+            }
+        }
+    }
+}
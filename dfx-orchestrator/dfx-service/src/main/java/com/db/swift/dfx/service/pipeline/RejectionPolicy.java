@@ -0,0 +1,20 @@
+package com.db.swift.dfx.service.pipeline;
+
+/**
+ * What a {@link PipelineStage} does with a message handed to it while its queue is full.
+ */
+public enum RejectionPolicy {
+    /**
+     * The handing thread waits until the queue has room. The previous stage, or the ingestion of new messages for the
+     * first stage, slows down to the pace of this one.
+     */
+    BLOCK,
+    /**
+     * The handing thread processes the message itself, which slows it down as well but keeps the message moving.
+     */
+    CALLER_RUNS,
+    /**
+     * The message is not processed by the stage and stays in the status of the previous stage.
+     */
+    DISCARD
+}
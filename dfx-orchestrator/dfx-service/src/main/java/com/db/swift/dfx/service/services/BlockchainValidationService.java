@@ -2,39 +2,34 @@ package com.db.swift.dfx.service.services;
 
 import com.db.swift.dfx.openapi.model.AuditTrailEntry;
 import com.db.swift.dfx.openapi.model.StoredMessage;
-import com.db.swift.dfx.service.events.BlockchainValidationSuccessfulEvent;
+import com.db.swift.dfx.service.pipeline.PipelineContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
-import java.util.Optional;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class BlockchainValidationService {
 
-    private final MessageStorageService messageStorageService;
-    private final ApplicationEventPublisher eventPublisher;
-
-    public void validateTransaction(String messageId) {
+    /**
+     * Validates the blockchain transaction referenced by a message. The changes to the message are left to the
+     * pipeline to persist.
+     *
+     * @param context The message to validate.
+     * @return true if the transaction is valid or the message needs no validation.
+     */
+    public boolean validateTransaction(PipelineContext context) {
+        String messageId = context.getMessageId();
         log.info("Starting blockchain transaction validation for messageId: {}", messageId);
-        Optional<StoredMessage> messageOptional = messageStorageService.findMessageById(messageId);
-
-        if (messageOptional.isEmpty()) {
-            log.error("Cannot validate blockchain transaction. Message with ID {} not found.", messageId);
-            return;
-        }
-
-        StoredMessage storedMessage = messageOptional.get();
+        StoredMessage storedMessage = context.getMessage();
 
         // If there are no blockchain details, the step is successful by default.
         if (storedMessage.getBlckchnDetails() == null || storedMessage.getBlckchnDetails().getTxId() == null) {
             log.info("No blockchain details found for messageId: {}. Skipping validation and proceeding.", messageId);
-            eventPublisher.publishEvent(new BlockchainValidationSuccessfulEvent(this, messageId));
-            return;
+            return true;
         }
 
         // If there are no blockchain details, the step is successful by default.
@@ -42,25 +37,23 @@ public class BlockchainValidationService {
             log.info("Outbound Message, no blockchain validation necessary for messageId: {}. Skipping validation and proceeding.", messageId);
             storedMessage.addAuditTrailItem(createAuditEntry("Skipping Blockchain Validation due to Outbound Message", "Outbound Message, no blockchain validation necessary for messageId: " + messageId));
             storedMessage.setBlckchnTransactionValidationStatus(StoredMessage.BlckchnTransactionValidationStatusEnum.SKIPPED);
-            messageStorageService.updateMessage(storedMessage);
-            eventPublisher.publishEvent(new BlockchainValidationSuccessfulEvent(this, messageId));
-            return;
+            context.markChanged();
+            return true;
         }
 
         storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.BLOCKCHAIN_TXN_VALIDATION_IN_PROGRESS);
         storedMessage.addAuditTrailItem(createAuditEntry("Blockchain Validation Started", "Validating transaction hash on the network " + storedMessage.getBlckchnDetails().getNetwork()));
-        messageStorageService.updateMessage(storedMessage);
+        context.markChanged();
 
+        boolean isValid = false;
         try {
             // Perform the mock validation
-            boolean isValid = mockValidate(storedMessage.getBlckchnDetails().getTxId(), storedMessage.getBlckchnDetails().getNetwork());
+            isValid = mockValidate(storedMessage.getBlckchnDetails().getTxId(), storedMessage.getBlckchnDetails().getNetwork());
 
             if (isValid) {
                 log.info("Blockchain transaction hash is valid for messageId: {}", messageId);
                 storedMessage.setBlckchnTransactionValidationStatus(StoredMessage.BlckchnTransactionValidationStatusEnum.VALIDATED);
                 storedMessage.addAuditTrailItem(createAuditEntry("Blockchain Validation Succeeded", "Transaction hash is valid."));
-                // Publish event to trigger the next step (e.g., FX service)
-                eventPublisher.publishEvent(new BlockchainValidationSuccessfulEvent(this, messageId));
             } else {
                 log.error("Blockchain transaction hash is invalid for messageId: {}", messageId);
                 storedMessage.setBlckchnTransactionValidationStatus(StoredMessage.BlckchnTransactionValidationStatusEnum.FAILED);
@@ -69,11 +62,13 @@ public class BlockchainValidationService {
             }
         } catch (Exception e) {
             log.error("An error occurred during blockchain validation for messageId: {}", messageId, e);
+            isValid = false;
             storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.FAILED);
             storedMessage.addAuditTrailItem(createAuditEntry("Blockchain Validation Failed", e.getMessage()));
-        } finally {
-            messageStorageService.updateMessage(storedMessage);
         }
+
+        // The pipeline triggers the next step (e.g., FX service) once the validation result is persisted.
+        return isValid;
     }
 
     /**
@@ -0,0 +1,17 @@
+package com.db.swift.dfx.service.services;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a resubmitted transaction is still being stored by a concurrent submission, which did not finish
+ * within {@code dfx.ingestion.idempotency.wait-timeout}.
+ */
+@Getter
+public class ConcurrentSubmissionException extends RuntimeException {
+    private final String messageId;
+
+    public ConcurrentSubmissionException(String messageId) {
+        super("Message " + messageId + " holds a transaction that is still being stored by a concurrent submission");
+        this.messageId = messageId;
+    }
+}
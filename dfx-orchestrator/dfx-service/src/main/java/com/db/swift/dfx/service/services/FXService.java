@@ -3,19 +3,24 @@ package com.db.swift.dfx.service.services;
 import com.db.swift.dfx.jaxb.model.fxtr014.*;
 import com.db.swift.dfx.openapi.model.AuditTrailEntry;
 import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.iso20022.MessageRouter;
+import com.db.swift.dfx.service.iso20022.Pacs008Fields;
+import com.db.swift.dfx.service.iso20022.Pacs008Version.TransferDetails;
+import com.db.swift.dfx.service.pipeline.PipelineContext;
 import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.text.RandomStringGenerator;
 import org.springframework.stereotype.Service;
+import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
-import java.util.Optional;
 
 
 import static com.db.swift.dfx.service.constants.DfxConstants.DIGITAL_CURRENCIES;
@@ -27,19 +32,20 @@ public class FXService {
     private final MessageStorageService messageStorageService;
     private final FXRateProvider fxRateProvider;
     private final JaxbMarshallingUtil jaxbMarshallingUtil;
-    private static final Base64 base64 = new Base64();
+    private final MessageRouter messageRouter;
 
 
-    public void handleFxTradeCreation(String messageId) {
-        log.info("Received successful LEI verification event for messageId: {}. Starting FX Conversion creation.", messageId);
-        Optional<StoredMessage> messageOptional = messageStorageService.findMessageById(messageId);
-
-        if (messageOptional.isEmpty()) {
-            log.error("Cannot create FX Conversion. Message with ID {} not found.", messageId);
-            return;
-        }
-
-        StoredMessage storedMessage = messageOptional.get();
+    /**
+     * Creates the fxtr.014 FX trade instruction of an outbound message and completes the message. The changes to the
+     * message are left to the pipeline to persist.
+     *
+     * @param context The message, with the fields of its pacs.008 payload if they are at hand.
+     * @return true if the message was completed.
+     */
+    public boolean handleFxTradeCreation(PipelineContext context) {
+        String messageId = context.getMessageId();
+        log.info("Received successful blockchain validation for messageId: {}. Starting FX Conversion creation.", messageId);
+        StoredMessage storedMessage = context.getMessage();
         String randomHash = new RandomStringGenerator.Builder().withinRange('a', 'z').withinRange('0', '9').build()
                 .generate(64);
         String fxTransactionHash = "0x" + randomHash;
@@ -59,20 +65,16 @@ public class FXService {
 
             storedMessage.addAuditTrailItem(createAuditEntry("Transaction completed",
                     "Successfully completed all flows linked to this transaction."));
-            messageStorageService.updateMessage(storedMessage);
-            return;
+            context.markChanged();
+            return true;
         }
 
         storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.FX_MESSAGE_CREATION_IN_PROGRESS);
         storedMessage.addAuditTrailItem(createAuditEntry("FX Conversion Creation Started", "Beginning creation of fxtr.014 message."));
-        messageStorageService.updateMessage(storedMessage);
+        context.markChanged();
         try {
-            // 1. Unmarshal original pacs.008 to get required data
-            com.db.swift.dfx.jaxb.model.pacs008.Document pacs008 = jaxbMarshallingUtil.unmarshall(
-                    new String(base64.decode(storedMessage.getPayload())),
-                    com.db.swift.dfx.jaxb.model.pacs008.Document.class,
-                    "/xsd/pacs.008.001.14.xsd"
-            );
+            // 1. Take the required data from the original pacs.008
+            TransferDetails pacs008 = TransferDetails.of(fields(context));
 
             // 2. Parse currencies from Remittance Information
             String sourceCurrency = storedMessage.getCcy();
@@ -98,11 +100,12 @@ public class FXService {
             }
             storedMessage.setAmt(storedMessage.getTargetAmt().divide(rate, RoundingMode.HALF_UP));
 
-            // 5. Marshal fxtr.014 to XML string
-            String fxtrPayload = base64.encodeToString(jaxbMarshallingUtil.marshall(fxtr014).getBytes(StandardCharsets.UTF_8));
+            // 5. Marshal fxtr.014 to XML
+            ByteArrayOutputStream fxtrPayload = new ByteArrayOutputStream();
+            jaxbMarshallingUtil.marshall(fxtr014, fxtrPayload);
 
             // 6. Update StoredMessage with result
-            storedMessage.setFxtrPayload(fxtrPayload);
+            storedMessage.setFxtrPayloadRef(messageStorageService.storePayload(fxtrPayload.toByteArray()));
             storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED);
             storedMessage.addAuditTrailItem(createAuditEntry("FX Conversion Created",
                     "Successfully created fxtr.014 message."));
@@ -121,21 +124,29 @@ public class FXService {
 
             storedMessage.addAuditTrailItem(createAuditEntry("Transaction completed",
                     "Successfully completed all flows linked to this transaction."));
-
+            return true;
 
         } catch (Exception e) {
             log.error("Failed to create FX for messageId: {}", messageId, e);
             storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.FAILED);
             storedMessage.addAuditTrailItem(createAuditEntry("FX Conversion Creation Failed", e.getMessage()));
-        } finally {
-            messageStorageService.updateMessage(storedMessage);
+            return false;
         }
-
     }
 
-    private Document createFxTradeInstruction(com.db.swift.dfx.jaxb.model.pacs008.Document pacs008, String sourceCcy, String targetCcy, BigDecimal rate) {
-        var pacsTxInf = pacs008.getFIToFICstmrCdtTrf().getCdtTrfTxInf().get(0);
+    /**
+     * The fields of the pacs.008 payload of a message. Unless they were carried over from the ingestion, they are read
+     * from the stored payload, which was validated when it was ingested.
+     */
+    private Pacs008Fields fields(PipelineContext context) throws SAXException, IOException {
+        if (context.getFields() == null) {
+            byte[] payload = messageStorageService.loadPayload(context.getMessage());
+            context.setFields(messageRouter.route(payload).extractFields(new ByteArrayInputStream(payload), null));
+        }
+        return context.getFields();
+    }
 
+    private Document createFxTradeInstruction(TransferDetails pacs008, String sourceCcy, String targetCcy, BigDecimal rate) {
         // Create the root fxtr.014 document
         Document fxtrDocument = new Document();
         ForeignExchangeTradeInstructionV06 fxTrade = new ForeignExchangeTradeInstructionV06();
@@ -144,15 +155,15 @@ public class FXService {
         // --- Trade Agreement ---
         TradeAgreement14 tradeAgreement = new TradeAgreement14();
         tradeAgreement.setTradDt(LocalDate.now());
-        tradeAgreement.setOrgtrRef(pacsTxInf.getPmtId().getInstrId());
+        tradeAgreement.setOrgtrRef(pacs008.instrId());
         fxTrade.setTradInf(tradeAgreement);
 
         // --- Trading Side (Debtor) ---
         TradePartyIdentification8 tradingSide = new TradePartyIdentification8();
         PartyIdentification242Choice tradingParty = new PartyIdentification242Choice();
         PartyIdentification266 tradingPartyId = new PartyIdentification266();
-        tradingPartyId.setPtyNm(pacsTxInf.getDbtr().getNm());
-        tradingPartyId.setLglNttyIdr(pacsTxInf.getDbtrAgt().getFinInstnId().getLEI());
+        tradingPartyId.setPtyNm(pacs008.debtorName());
+        tradingPartyId.setLglNttyIdr(pacs008.debtorAgentLei());
         tradingParty.setPtyId(tradingPartyId);
         tradingSide.setSubmitgPty(tradingParty);
         fxTrade.setTradgSdId(tradingSide);
@@ -161,15 +172,15 @@ public class FXService {
         TradePartyIdentification8 counterpartySide = new TradePartyIdentification8();
         PartyIdentification242Choice counterparty = new PartyIdentification242Choice();
         PartyIdentification266 counterpartyId = new PartyIdentification266();
-        counterpartyId.setPtyNm(pacsTxInf.getCdtr().getNm());
-        counterpartyId.setLglNttyIdr(pacsTxInf.getCdtrAgt().getFinInstnId().getLEI());
+        counterpartyId.setPtyNm(pacs008.creditorName());
+        counterpartyId.setLglNttyIdr(pacs008.creditorAgentLei());
         counterparty.setPtyId(counterpartyId);
         counterpartySide.setSubmitgPty(counterparty);
         fxTrade.setCtrPtySdId(counterpartySide);
 
         // --- Amounts ---
         AmountsAndValueDate8 amounts = new AmountsAndValueDate8();
-        BigDecimal targetAmount = pacsTxInf.getIntrBkSttlmAmt().getValue();
+        BigDecimal targetAmount = pacs008.settlementAmount();
         BigDecimal sourceAmount = targetAmount.divide(rate, RoundingMode.HALF_UP).setScale(2, RoundingMode.HALF_UP);
 
         amounts.setTradgSdSellAmt(createCurrencyOrDigitalTokenAmount(sourceCcy, sourceAmount));
@@ -0,0 +1,223 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.openapi.model.AuditTrailEntry;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.events.MessageChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes message changes to Server-Sent Events subscribers.
+ * <p>
+ * Changes are received synchronously from {@link MessageStorageService} while the message is still locked, so
+ * handling them must never block: every subscriber has a bounded buffer and a small dispatcher pool does the actual
+ * network I/O. If a subscriber falls behind and its buffer overflows, its pending events are dropped and replaced by
+ * a single {@code resync} event telling the client from which position of the change sequence to catch up via
+ * {@code /list/changes}.
+ */
+@Service
+@Slf4j
+public class MessageEventStreamService {
+
+    static final String EVENT_STORED = "message-stored";
+    static final String EVENT_STATUS_CHANGED = "status-changed";
+    static final String EVENT_AUDIT_TRAIL = "audit-trail";
+    static final String EVENT_RESYNC = "resync";
+    private static final long NO_CHANGE = Long.MAX_VALUE;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+    private final int bufferSize;
+    private final Duration timeout;
+    private final Counter droppedEvents;
+
+    public MessageEventStreamService(@Value("${dfx.events.buffer-size:256}") int bufferSize,
+                                     @Value("${dfx.events.timeout:PT30M}") Duration timeout,
+                                     @Value("${dfx.events.dispatcher-threads:4}") int dispatcherThreads,
+                                     MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.timeout = timeout;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-dispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("dfx.events.subscribers", subscriptions, List::size)
+                .description("Connected Server-Sent Events subscribers")
+                .register(meterRegistry);
+        this.droppedEvents = Counter.builder("dfx.events.dropped")
+                .description("Events dropped because a subscriber buffer overflowed")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.forEach(subscription -> subscription.emitter.complete());
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Registers a new subscriber.
+     *
+     * @param messageIds Only changes of these messages are pushed; all messages if empty.
+     * @param statuses   Only changes leading to one of these statuses are pushed; all statuses if empty.
+     * @return The emitter to return from the controller.
+     */
+    public SseEmitter subscribe(Set<String> messageIds, Set<StoredMessage.TransactionStatusEnum> statuses) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscription subscription = new Subscription(emitter, messageIds, statuses);
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(() -> subscriptions.remove(subscription));
+        emitter.onError(e -> subscriptions.remove(subscription));
+        subscriptions.add(subscription);
+        log.info("New event stream subscriber for message IDs {} and statuses {}, {} subscriber(s) connected",
+                messageIds, statuses, subscriptions.size());
+        return emitter;
+    }
+
+    /**
+     * Fans a change out to the buffers of all matching subscribers. Runs on the thread that changed the message.
+     */
+    @EventListener
+    public void onMessageChanged(MessageChangedEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        SseEmitter.SseEventBuilder sseEvent = SseEmitter.event()
+                .id(Long.toString(event.getChangeSeq()))
+                .name(event.isCreated() ? EVENT_STORED : event.isStatusChanged() ? EVENT_STATUS_CHANGED : EVENT_AUDIT_TRAIL)
+                .data(new MessageUpdate(event.getMessageId(), event.getChangeSeq(), event.getPreviousStatus(),
+                        event.getStatus(), event.getNewAuditTrailEntries()), MediaType.APPLICATION_JSON);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.matches(event)) {
+                subscription.offer(sseEvent, event.getChangeSeq());
+            }
+        }
+    }
+
+    /**
+     * Sends a comment to all subscribers, so idle connections are kept open by proxies and closed
+     * connections are detected.
+     */
+    @Scheduled(fixedDelayString = "${dfx.events.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(SseEmitter.event().comment("heartbeat"), NO_CHANGE);
+        }
+    }
+
+    /**
+     * Payload of a pushed event.
+     *
+     * @param auditTrail The audit trail entries added by the change.
+     */
+    public record MessageUpdate(String messageId, long changeSeq,
+                                StoredMessage.TransactionStatusEnum previousStatus,
+                                StoredMessage.TransactionStatusEnum status,
+                                List<AuditTrailEntry> auditTrail) {
+    }
+
+    /**
+     * Payload of a {@code resync} event.
+     *
+     * @param since The position to pass to {@code /list/changes} to catch up on the dropped events.
+     */
+    public record Resync(long since) {
+    }
+
+    private final class Subscription {
+        private final SseEmitter emitter;
+        private final Set<String> messageIds;
+        private final Set<StoredMessage.TransactionStatusEnum> statuses;
+        private final Queue<PendingEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+
+        private Subscription(SseEmitter emitter, Set<String> messageIds, Set<StoredMessage.TransactionStatusEnum> statuses) {
+            this.emitter = emitter;
+            this.messageIds = messageIds;
+            this.statuses = statuses;
+        }
+
+        boolean matches(MessageChangedEvent event) {
+            return (messageIds.isEmpty() || messageIds.contains(event.getMessageId()))
+                    && (statuses.isEmpty() || statuses.contains(event.getStatus()));
+        }
+
+        /**
+         * @param changeSeq The position of the change, {@link #NO_CHANGE} for events not describing a change.
+         */
+        void offer(SseEmitter.SseEventBuilder event, long changeSeq) {
+            synchronized (this) {
+                if (!buffer.offer(new PendingEvent(event, changeSeq))) {
+                    // The client is too slow: replace everything it has not received yet by a single resync event
+                    // pointing right before the oldest change it missed.
+                    long oldest = buffer.stream().mapToLong(PendingEvent::changeSeq).reduce(changeSeq, Math::min);
+                    droppedEvents.increment(buffer.size() + 1);
+                    buffer.clear();
+                    Resync resync = new Resync(oldest - 1);
+                    SseEmitter.SseEventBuilder resyncEvent = SseEmitter.event()
+                            .name(EVENT_RESYNC)
+                            .data(resync, MediaType.APPLICATION_JSON);
+                    buffer.offer(new PendingEvent(resyncEvent, oldest));
+                    log.warn("Event stream subscriber fell behind, asking it to resync from change sequence {}", resync.since());
+                }
+            }
+            if (dispatching.compareAndSet(false, true)) {
+                dispatcher.execute(this::dispatch);
+            }
+        }
+
+        private void dispatch() {
+            try {
+                PendingEvent pending;
+                while ((pending = poll()) != null) {
+                    emitter.send(pending.event());
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Event stream subscriber disconnected", e);
+                subscriptions.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                dispatching.set(false);
+            }
+            // An event may have been offered after the last poll but before the flag was reset.
+            if (!buffer.isEmpty() && dispatching.compareAndSet(false, true)) {
+                dispatcher.execute(this::dispatch);
+            }
+        }
+
+        private synchronized PendingEvent poll() {
+            return buffer.poll();
+        }
+    }
+
+    /**
+     * An event waiting in a subscriber buffer. A resync event carries the position it resyncs from, so a
+     * second overflow never resyncs from a later position.
+     */
+    private record PendingEvent(SseEmitter.SseEventBuilder event, long changeSeq) {
+    }
+}
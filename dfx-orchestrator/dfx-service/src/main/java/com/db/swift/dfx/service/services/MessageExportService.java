@@ -0,0 +1,203 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.openapi.model.ExportRecord;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.storage.MessageArchive;
+import com.db.swift.dfx.service.storage.MessageCursor;
+import com.db.swift.dfx.service.storage.MessagePage;
+import com.db.swift.dfx.service.storage.MessageQuery;
+import com.db.swift.dfx.service.utils.NdjsonInputStream;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Exports the complete message history as newline-delimited JSON.
+ * <p>
+ * The export first walks the working set in timestamp order, one page at a time, and then the archive segments in
+ * the order they were written. Messages are read and serialized only while the client consumes the stream, so the
+ * memory used does not depend on the number of stored messages. Every record carries a resume token pointing right
+ * behind it.
+ */
+@Service
+@Slf4j
+public class MessageExportService {
+
+    private static final int PAGE_SIZE = 256;
+
+    private final MessageStorageService messageStorageService;
+    private final MessageArchive messageArchive;
+    private final ObjectWriter objectWriter;
+
+    public MessageExportService(MessageStorageService messageStorageService, MessageArchive messageArchive,
+                                ObjectMapper objectMapper) {
+        this.messageStorageService = messageStorageService;
+        this.messageArchive = messageArchive;
+        // Null fields are omitted to keep the records compact.
+        this.objectWriter = objectMapper.copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .writerFor(ExportRecord.class);
+    }
+
+    /**
+     * Starts or resumes an export. Payloads are not included, the records carry the references to the payload blobs.
+     *
+     * @param resumeToken The resume token of the last record received, or null to start from the beginning.
+     * @return The export as newline-delimited {@link ExportRecord} objects; closing it releases all resources.
+     * @throws IllegalArgumentException if the resume token is invalid.
+     */
+    public InputStream export(String resumeToken) {
+        ExportPosition start = resumeToken == null ? ExportPosition.START : ExportPosition.decode(resumeToken);
+        log.info("Starting message export at {}", start);
+        ExportIterator records = new ExportIterator(start);
+        return new NdjsonInputStream(records, objectWriter, records);
+    }
+
+    /**
+     * Position of the export, either in the working set (behind a timeline cursor) or in the archive
+     * (behind a number of records of an archive segment).
+     */
+    private record ExportPosition(MessageCursor cursor, Long segment, long recordsRead) {
+
+        static final ExportPosition START = new ExportPosition(null, null, 0);
+
+        boolean inArchive() {
+            return segment != null;
+        }
+
+        String encode() {
+            String value = inArchive() ? "A" + segment + ":" + recordsRead : "W" + (cursor == null ? "" : cursor.encode());
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ExportPosition decode(String token) {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            try {
+                if (value.startsWith("W")) {
+                    return new ExportPosition(value.length() == 1 ? null : MessageCursor.decode(value.substring(1)), null, 0);
+                }
+                if (value.startsWith("A") && value.indexOf(':') > 0) {
+                    int separator = value.indexOf(':');
+                    return new ExportPosition(null, Long.parseLong(value.substring(1, separator)),
+                            Long.parseLong(value.substring(separator + 1)));
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid resume token: " + token, e);
+            }
+            throw new IllegalArgumentException("Invalid resume token: " + token);
+        }
+    }
+
+    /**
+     * Lazily reads the records of an export, at most one page of the working set or one archive record ahead.
+     */
+    private final class ExportIterator implements Iterator<ExportRecord>, Closeable {
+
+        private final Deque<ExportRecord> buffer = new ArrayDeque<>();
+        private MessageCursor cursor;
+        private boolean workingSetDone;
+
+        private Long segment;
+        private long recordsRead;
+        private Stream<StoredMessage> segmentStream;
+        private Iterator<StoredMessage> segmentRecords;
+
+        ExportIterator(ExportPosition start) {
+            this.cursor = start.cursor();
+            if (start.inArchive()) {
+                workingSetDone = true;
+                // The segment of the token is continued, unless it no longer exists.
+                Long first = messageArchive.segmentSequences().ceiling(start.segment());
+                openSegment(first, start.segment().equals(first) ? start.recordsRead() : 0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (buffer.isEmpty()) {
+                if (!advance()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public ExportRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
+
+        /**
+         * Reads the next page of the working set or the next archive record into the buffer.
+         *
+         * @return false if the export is complete.
+         */
+        private boolean advance() {
+            if (!workingSetDone) {
+                MessagePage<StoredMessage> page = messageStorageService.findMessages(MessageQuery.all(), cursor, PAGE_SIZE);
+                for (StoredMessage message : page.messages()) {
+                    cursor = MessageCursor.of(message);
+                    buffer.add(toRecord(message, new ExportPosition(cursor, null, 0)));
+                }
+                if (page.nextCursor() == null) {
+                    workingSetDone = true;
+                    openSegment(messageArchive.segmentSequences().isEmpty() ? null : messageArchive.segmentSequences().first(), 0);
+                }
+                return true;
+            }
+            while (segmentRecords != null) {
+                if (segmentRecords.hasNext()) {
+                    StoredMessage message = segmentRecords.next();
+                    recordsRead++;
+                    if (messageArchive.isCurrent(segment, message.getMessageId())) {
+                        buffer.add(toRecord(message, new ExportPosition(null, segment, recordsRead)));
+                    }
+                    return true;
+                }
+                openSegment(messageArchive.segmentSequences().higher(segment), 0);
+            }
+            return false;
+        }
+
+        private void openSegment(Long sequence, long skip) {
+            close();
+            segment = sequence;
+            recordsRead = skip;
+            if (sequence != null) {
+                segmentStream = messageArchive.readSegment(sequence).skip(skip);
+                segmentRecords = segmentStream.iterator();
+            }
+        }
+
+        private ExportRecord toRecord(StoredMessage message, ExportPosition position) {
+            return ExportRecord.builder()
+                    .resumeToken(position.encode())
+                    .message(message)
+                    .build();
+        }
+
+        @Override
+        public void close() {
+            if (segmentStream != null) {
+                segmentStream.close();
+                segmentStream = null;
+                segmentRecords = null;
+            }
+        }
+    }
+}
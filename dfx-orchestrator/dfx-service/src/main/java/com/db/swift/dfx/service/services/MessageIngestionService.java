@@ -0,0 +1,625 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.openapi.model.AuditTrailEntry;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.events.MessageStoredEvent;
+import com.db.swift.dfx.service.iso20022.MessageRouter;
+import com.db.swift.dfx.service.iso20022.Pacs008Field;
+import com.db.swift.dfx.service.iso20022.Pacs008Fields;
+import com.db.swift.dfx.service.iso20022.Pacs008Version;
+import com.db.swift.dfx.service.pipeline.PipelineContext;
+import com.db.swift.dfx.service.storage.IdempotencyIndex;
+import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
+import com.db.swift.dfx.service.utils.Pacs008Splitter;
+import com.db.swift.dfx.service.utils.XsdSchemaRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import jakarta.xml.bind.JAXBException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Base64;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Turns incoming pacs.008 payloads into stored messages: routes the payload to its pacs.008 version, validates it
+ * against the schema of that version, splits it into its transactions,
+ * maps every transaction to a {@link StoredMessage}, persists them and starts the processing flow of each with a
+ * {@link MessageStoredEvent}. Transactions that were already ingested are recognized by their business identifiers
+ * and not processed again.
+ * <p>
+ * A message with a single transaction is not unmarshalled: the few values needed for its {@link StoredMessage} are
+ * read by a streaming extractor while the message is validated, in one pass over the XML. Messages with several
+ * transactions are unmarshalled one transaction at a time to split them. With
+ * {@code dfx.ingestion.extraction=jaxb} every message is unmarshalled and checked with Bean Validation as well.
+ */
+@Service
+@Slf4j
+public class MessageIngestionService {
+    private static final Base64 base64 = new Base64();
+
+    private final JaxbMarshallingUtil jaxbMarshallingUtil;
+    private final XsdSchemaRegistry schemaRegistry;
+    private final Validator validator;
+    private final MessageStorageService messageStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MessageRouter messageRouter;
+    private final Pacs008Splitter pacs008Splitter;
+    private final IdempotencyIndex idempotencyIndex;
+    private final ExecutorService batchParser;
+    private final int splitChunkSize;
+    private final boolean streamingExtraction;
+    private final Duration duplicateWaitTimeout;
+
+    public MessageIngestionService(JaxbMarshallingUtil jaxbMarshallingUtil, XsdSchemaRegistry schemaRegistry, Validator validator,
+                                   MessageStorageService messageStorageService, ApplicationEventPublisher eventPublisher,
+                                   MessageRouter messageRouter, Pacs008Splitter pacs008Splitter,
+                                   IdempotencyIndex idempotencyIndex,
+                                   @Value("${dfx.ingestion.batch.parallelism:0}") int batchParallelism,
+                                   @Value("${dfx.ingestion.split.chunk-size:256}") int splitChunkSize,
+                                   @Value("${dfx.ingestion.extraction:streaming}") String extraction,
+                                   @Value("${dfx.ingestion.idempotency.wait-timeout:PT10S}") Duration duplicateWaitTimeout) {
+        this.jaxbMarshallingUtil = jaxbMarshallingUtil;
+        this.schemaRegistry = schemaRegistry;
+        this.validator = validator;
+        this.messageStorageService = messageStorageService;
+        this.eventPublisher = eventPublisher;
+        this.messageRouter = messageRouter;
+        this.pacs008Splitter = pacs008Splitter;
+        this.idempotencyIndex = idempotencyIndex;
+        this.splitChunkSize = splitChunkSize;
+        this.streamingExtraction = !"jaxb".equalsIgnoreCase(extraction);
+        this.duplicateWaitTimeout = duplicateWaitTimeout;
+        int threads = batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchParser = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-parser-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchParser.shutdownNow();
+    }
+
+    /**
+     * Ingests a pacs.008 message. A message with several transactions is split into one stored message per
+     * transaction: the transactions are read one at a time, converted in parallel and stored in chunks, so the
+     * processing of the first transactions starts while the rest of the message is still being read. Transactions
+     * that can not be converted are skipped, transactions that were already ingested are answered with the ID of
+     * their original message, see {@link IdempotencyIndex}.
+     * <p>
+     * If reading or storing a chunk fails after earlier chunks were stored, the stored messages stay and are
+     * processed; the result lists them along with the reason the rest of the message was not stored.
+     *
+     * @param xml               The pacs.008 message.
+     * @param messageId         The ID assigned to the message, used for its first transaction.
+     * @param receivedTimestamp The time the message was received.
+     * @return The IDs of the stored messages and the number of skipped and duplicate transactions.
+     * @throws SAXException             if the payload does not match the schema of its pacs.008 version.
+     * @throws IllegalArgumentException if the payload is not a pacs.008 message of a supported version or has no
+     *                                  transaction.
+     * @throws ConcurrentSubmissionException if the message is a resubmission of a single transaction that a
+     *                                  concurrent submission did not finish storing in time.
+     */
+    public IngestionResult ingest(byte[] xml, String messageId, OffsetDateTime receivedTimestamp) throws SAXException {
+        return ingest(messageRouter.route(xml), xml, messageId, receivedTimestamp);
+    }
+
+    private <D> IngestionResult ingest(Pacs008Version<D, ?, ?> version, byte[] xml, String messageId,
+                                       OffsetDateTime receivedTimestamp) throws SAXException {
+        SplitProgress progress = new SplitProgress();
+        List<PendingTransaction> chunk = new ArrayList<>(splitChunkSize);
+        try (Stream<ParsedTransaction<D>> transactions = transactions(version, xml)) {
+            Iterator<ParsedTransaction<D>> iterator = transactions.iterator();
+            if (!iterator.hasNext()) {
+                throw new IllegalArgumentException("pacs.008 message without credit transfer transaction");
+            }
+            ParsedTransaction<D> first = iterator.next();
+            if (!iterator.hasNext()) {
+                return ingestSingle(version, first, xml, messageId, receivedTimestamp);
+            }
+
+            String msgId = first.fields().get(Pacs008Field.MSG_ID);
+            chunk.add(pending(version, first, messageId, receivedTimestamp, splitAuditEntry(msgId, 1, receivedTimestamp)));
+            int index = 1;
+            while (iterator.hasNext()) {
+                ParsedTransaction<D> transaction = iterator.next();
+                index++;
+                chunk.add(pending(version, transaction, UUID.randomUUID().toString(), receivedTimestamp,
+                        splitAuditEntry(msgId, index, receivedTimestamp)));
+                if (chunk.size() == splitChunkSize) {
+                    storeChunk(chunk, progress);
+                }
+            }
+            storeChunk(chunk, progress);
+            log.info("Split pacs.008 message {} into {} message(s), {} transaction(s) rejected, {} duplicate(s)",
+                    msgId, progress.messageIds.size() - progress.duplicates, progress.rejected, progress.duplicates);
+        } catch (RuntimeException e) {
+            int unstored = chunk.size();
+            chunk.stream()
+                    .filter(transaction -> transaction.key() != null)
+                    .forEach(transaction -> idempotencyIndex.release(transaction.key()));
+            if (progress.messageIds.isEmpty()) {
+                throw e;
+            }
+            // Earlier chunks are stored and already being processed, so they are reported instead of failing.
+            log.error("Stopped ingesting pacs.008 message after {} stored message(s). Reason: {}",
+                    progress.messageIds.size(), e.toString());
+            return new IngestionResult(progress.messageIds, progress.rejected + unstored, progress.duplicates,
+                    "Only the first " + progress.messageIds.size() + " transaction(s) were stored: " + describe(e));
+        }
+        return new IngestionResult(progress.messageIds, progress.rejected, progress.duplicates,
+                progress.messageIds.isEmpty() ? "None of the transactions could be processed" : null);
+    }
+
+    /**
+     * Ingests a batch of messages. The payloads are parsed in parallel, then all valid messages are stored with a
+     * single commit. A payload that can not be parsed is rejected without affecting the others; a payload with
+     * several transactions is rejected as a whole if one of them can not be converted. If the single commit fails,
+     * the payloads are stored one by one, so a payload that can not be stored only rejects itself.
+     *
+     * @param payloads          The Base64 encoded pacs.008 messages.
+     * @param receivedTimestamp The time the batch was received.
+     * @return One result per payload, in the order of the payloads.
+     */
+    public List<IngestionResult> ingestBatch(List<String> payloads, OffsetDateTime receivedTimestamp) {
+        List<CompletableFuture<ParsedPayload>> parsing = new ArrayList<>(payloads.size());
+        for (String payload : payloads) {
+            parsing.add(CompletableFuture.supplyAsync(() -> parse(payload, receivedTimestamp), batchParser));
+        }
+        List<ParsedPayload> parsed = parsing.stream().map(CompletableFuture::join).toList();
+
+        List<ConvertedTransaction> accepted = parsed.stream()
+                .flatMap(payload -> payload.transactions().stream())
+                .toList();
+        List<IngestionResult> results = new ArrayList<>(parsed.size());
+        try {
+            persist(accepted);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store batch of {} message(s) with a single commit, storing its payloads one by one. Reason: {}",
+                    accepted.size(), e.toString());
+            // All payloads are stored before any result is resolved, a duplicate may wait for a later payload.
+            List<String> failures = parsed.stream().map(this::storeSeparately).toList();
+            long deadline = System.nanoTime() + duplicateWaitTimeout.toNanos();
+            for (int i = 0; i < parsed.size(); i++) {
+                results.add(failures.get(i) == null ? parsed.get(i).result(deadline) : parsed.get(i).failed(failures.get(i)));
+            }
+            log.info("Ingested batch of {} payload(s), {} payload(s) rejected",
+                    payloads.size(), results.stream().filter(result -> !result.accepted()).count());
+            return results;
+        }
+        Map<String, String> reserved = new HashMap<>();
+        parsed.forEach(payload -> reserved.putAll(payload.reserved()));
+        started(accepted, reserved);
+        // Resolved only now that the batch is committed: a duplicate may wait for a transaction of this batch.
+        long deadline = System.nanoTime() + duplicateWaitTimeout.toNanos();
+        parsed.forEach(payload -> results.add(payload.result(deadline)));
+        log.info("Ingested batch of {} payload(s) as {} message(s), {} payload(s) rejected",
+                payloads.size(), accepted.size(), results.stream().filter(result -> !result.accepted()).count());
+        return results;
+    }
+
+    /**
+     * Stores the messages of a single payload of a batch.
+     *
+     * @return The reason the messages could not be stored, or null if they were stored.
+     */
+    private String storeSeparately(ParsedPayload payload) {
+        if (payload.transactions().isEmpty()) {
+            return null;
+        }
+        try {
+            store(payload.transactions(), payload.reserved());
+            return null;
+        } catch (RuntimeException e) {
+            log.error("Failed to store message of batch. Reason: {}", e.toString());
+            return "Failed to store: " + describe(e);
+        }
+    }
+
+    private <D> IngestionResult ingestSingle(Pacs008Version<D, ?, ?> version, ParsedTransaction<D> transaction, byte[] xml,
+                                             String messageId, OffsetDateTime receivedTimestamp) {
+        String key = transaction.fields().idempotencyKey();
+        CompletableFuture<String> stored;
+        while ((stored = idempotencyIndex.reserve(key, messageId)) != null) {
+            String original;
+            try {
+                original = stored.get(duplicateWaitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Message with ID {} is a resubmission of a transaction still being stored after {}",
+                        messageId, duplicateWaitTimeout);
+                throw new ConcurrentSubmissionException(messageId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrentSubmissionException(messageId);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Reservation of a transaction failed", e.getCause());
+            }
+            if (original != null) {
+                log.info("Message with ID {} is a resubmission of message {}", messageId, original);
+                return new IngestionResult(List.of(original), 0, 1, null);
+            }
+            // The concurrent submission of the transaction was not stored, so this one takes over.
+        }
+        // A single transaction is stored with the original payload.
+        ConvertedTransaction converted = convert(version, transaction, xml, messageId, receivedTimestamp, null);
+        if (converted.message() == null) {
+            idempotencyIndex.release(key);
+            return new IngestionResult(List.of(), 1, 0, converted.error());
+        }
+        store(List.of(converted), Map.of(key, messageId));
+        return new IngestionResult(List.of(messageId), 0, 0, null);
+    }
+
+    private ParsedPayload parse(String payload, OffsetDateTime receivedTimestamp) {
+        Map<String, String> reserved = new HashMap<>();
+        try {
+            byte[] xml = base64.decode(payload);
+            return parse(messageRouter.route(xml), xml, receivedTimestamp, reserved);
+        } catch (SAXException | RuntimeException e) {
+            log.error("Failed to process message of batch. Reason: {}", e.toString());
+            reserved.keySet().forEach(idempotencyIndex::release);
+            return new ParsedPayload(List.of(), List.of(), Map.of(), 0, Math.max(1, reserved.size()), describe(e));
+        }
+    }
+
+    /**
+     * Parses a payload of a batch.
+     *
+     * @param reserved Receives the reservations of the new transactions, to be released by the caller if parsing
+     *                 fails with an exception.
+     */
+    private <D> ParsedPayload parse(Pacs008Version<D, ?, ?> version, byte[] xml, OffsetDateTime receivedTimestamp,
+                                    Map<String, String> reserved) throws SAXException {
+        List<ConvertedTransaction> converted = new ArrayList<>();
+        List<CompletableFuture<String>> references = new ArrayList<>();
+        int duplicates = 0;
+        try (Stream<ParsedTransaction<D>> transactions = transactions(version, xml)) {
+            Iterator<ParsedTransaction<D>> iterator = transactions.iterator();
+            while (iterator.hasNext()) {
+                ParsedTransaction<D> transaction = iterator.next();
+                int index = references.size() + 1;
+                String key = transaction.fields().idempotencyKey();
+                String messageId = UUID.randomUUID().toString();
+                CompletableFuture<String> original = idempotencyIndex.reserve(key, messageId);
+                if (original != null) {
+                    references.add(original);
+                    duplicates++;
+                    continue;
+                }
+                reserved.put(key, messageId);
+                boolean single = index == 1 && !iterator.hasNext();
+                AuditTrailEntry splitEntry = single ? null
+                        : splitAuditEntry(transaction.fields().get(Pacs008Field.MSG_ID), index, receivedTimestamp);
+                ConvertedTransaction conversion = convert(version, transaction, single ? xml : null,
+                        messageId, receivedTimestamp, splitEntry);
+                if (conversion.message() == null) {
+                    reserved.keySet().forEach(idempotencyIndex::release);
+                    return new ParsedPayload(List.of(), List.of(), Map.of(), 0, reserved.size(),
+                            "Transaction " + index + ": " + conversion.error());
+                }
+                converted.add(conversion);
+                references.add(CompletableFuture.completedFuture(messageId));
+            }
+        }
+        if (references.isEmpty()) {
+            return new ParsedPayload(List.of(), List.of(), Map.of(), 0, 1, "pacs.008 message without credit transfer transaction");
+        }
+        return new ParsedPayload(converted, references, reserved, duplicates, 0, null);
+    }
+
+    /**
+     * Validates a message and reads its transactions. The transactions are only unmarshalled if the message has
+     * several of them or {@code dfx.ingestion.extraction=jaxb}.
+     */
+    private <D> Stream<ParsedTransaction<D>> transactions(Pacs008Version<D, ?, ?> version, byte[] xml) throws SAXException {
+        try {
+            if (streamingExtraction) {
+                Pacs008Fields fields = version.extractFields(new ByteArrayInputStream(xml),
+                        schemaRegistry.getSchema(version.getXsdPath()));
+                if (fields.getTransactions() == 1) {
+                    return Stream.of(new ParsedTransaction<>(fields, null));
+                }
+            } else {
+                jaxbMarshallingUtil.validate(new ByteArrayInputStream(xml), version.getXsdPath());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return pacs008Splitter.split(new ByteArrayInputStream(xml), version)
+                .map(transaction -> new ParsedTransaction<>(version.fields(transaction), transaction));
+    }
+
+    /**
+     * Reserves a transaction of a split message and, unless it is a duplicate, starts its conversion.
+     */
+    private <D> PendingTransaction pending(Pacs008Version<D, ?, ?> version, ParsedTransaction<D> transaction,
+                                           String messageId, OffsetDateTime receivedTimestamp, AuditTrailEntry splitEntry) {
+        String key = transaction.fields().idempotencyKey();
+        CompletableFuture<String> original = idempotencyIndex.reserve(key, messageId);
+        if (original != null) {
+            return new PendingTransaction(null, null, null, original);
+        }
+        return new PendingTransaction(key, messageId, CompletableFuture.supplyAsync(
+                () -> convert(version, transaction, null, messageId, receivedTimestamp, splitEntry), batchParser), null);
+    }
+
+    /**
+     * Stores the converted transactions of a chunk with a single commit and clears the chunk. The chunk is left
+     * as it is if it can not be stored.
+     */
+    private void storeChunk(List<PendingTransaction> chunk, SplitProgress progress) {
+        List<ConvertedTransaction> accepted = new ArrayList<>(chunk.size());
+        Map<String, String> reserved = new HashMap<>();
+        for (PendingTransaction transaction : chunk) {
+            if (transaction.original() != null) {
+                continue;
+            }
+            ConvertedTransaction converted = transaction.conversion().join();
+            if (converted.message() == null) {
+                idempotencyIndex.release(transaction.key());
+                continue;
+            }
+            accepted.add(converted);
+            reserved.put(transaction.key(), transaction.messageId());
+        }
+        store(accepted, reserved);
+        // Duplicates of transactions still being stored are only waited for once the own reservations are
+        // committed, a concurrent submission may wait for this one as well.
+        long deadline = System.nanoTime() + duplicateWaitTimeout.toNanos();
+        for (PendingTransaction transaction : chunk) {
+            if (transaction.original() == null) {
+                if (reserved.containsKey(transaction.key())) {
+                    progress.messageIds.add(transaction.messageId());
+                } else {
+                    progress.rejected++;
+                }
+                continue;
+            }
+            String original = awaitOriginal(transaction.original(), deadline);
+            if (original == null) {
+                progress.rejected++;
+            } else {
+                progress.messageIds.add(original);
+                progress.duplicates++;
+            }
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Waits for the message a duplicate transaction is stored as.
+     *
+     * @param deadline The {@link System#nanoTime()} up to which to wait for a concurrent submission storing it.
+     * @return The ID of the message, or null if the concurrent submission did not store it by the deadline.
+     */
+    private static String awaitOriginal(CompletableFuture<String> original, long deadline) {
+        try {
+            return original.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reservation of a transaction failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stores new messages, commits their reservations in the idempotency index and starts their processing.
+     * The reservations are released if the messages can not be stored. The stored messages are handed to the
+     * pipeline together with the fields read from their payloads, so neither is read again.
+     * <p>
+     * The messages are stored waiting for the first pipeline stage, so a message is never stored without being
+     * resumed after a crash.
+     */
+    private void store(List<ConvertedTransaction> transactions, Map<String, String> reserved) {
+        try {
+            persist(transactions);
+        } catch (RuntimeException e) {
+            reserved.keySet().forEach(idempotencyIndex::release);
+            throw e;
+        }
+        started(transactions, reserved);
+    }
+
+    /**
+     * Stores the messages, waiting for the first pipeline stage, with a single commit.
+     */
+    private void persist(List<ConvertedTransaction> transactions) {
+        List<StoredMessage> messages = transactions.stream().map(ConvertedTransaction::message).toList();
+        messages.forEach(message -> message.setPipelineStage(0));
+        messageStorageService.storeMessages(messages);
+    }
+
+    /**
+     * Commits the reservations of stored messages and starts their processing.
+     */
+    private void started(List<ConvertedTransaction> transactions, Map<String, String> reserved) {
+        idempotencyIndex.commit(reserved);
+        transactions.forEach(transaction -> eventPublisher.publishEvent(
+                new MessageStoredEvent(this, new PipelineContext(transaction.message(), transaction.fields()))));
+    }
+
+    /**
+     * Converts a single-transaction pacs.008 message to a new {@link StoredMessage}.
+     *
+     * @param originalXml The original message, or null to marshal the unmarshalled document of the transaction.
+     * @param splitEntry  The audit trail entry recording the split, or null if the message was not split.
+     */
+    private <D> ConvertedTransaction convert(Pacs008Version<D, ?, ?> version, ParsedTransaction<D> transaction,
+                                             byte[] originalXml, String messageId, OffsetDateTime receivedTimestamp,
+                                             AuditTrailEntry splitEntry) {
+        try {
+            if (transaction.document() != null) {
+                Set<ConstraintViolation<D>> violations = validator.validate(transaction.document());
+                if (!violations.isEmpty()) {
+                    throw new ConstraintViolationException(violations);
+                }
+            }
+            byte[] xml = originalXml;
+            if (xml == null) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                jaxbMarshallingUtil.marshall(version.toJaxbElement(transaction.document()), outputStream);
+                xml = outputStream.toByteArray();
+            }
+            StoredMessage message = toStoredMessage(version, transaction.fields(), xml, messageId, receivedTimestamp);
+            if (splitEntry != null) {
+                message.getAuditTrail().add(1, splitEntry);
+            }
+            return new ConvertedTransaction(message, transaction.fields(), null);
+        } catch (JAXBException | RuntimeException e) {
+            log.error("Failed to process transaction with ID: {}. Reason: {}", messageId, e.toString());
+            return new ConvertedTransaction(null, null, describe(e));
+        }
+    }
+
+    private static AuditTrailEntry splitAuditEntry(String msgId, int index, OffsetDateTime receivedTimestamp) {
+        return AuditTrailEntry.builder()
+                .timestamp(receivedTimestamp)
+                .action("Split from multi-transaction message")
+                .details("Transaction " + index + " of pacs.008 message " + msgId)
+                .build();
+    }
+
+    private static String describe(Exception e) {
+        // JAXB keeps the actual parser error in the linked exception.
+        Throwable cause = e instanceof JAXBException jaxbException && jaxbException.getLinkedException() != null
+                ? jaxbException.getLinkedException() : e;
+        return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+    }
+
+    /**
+     * Maps the fields of a single-transaction pacs.008 message to a new {@link StoredMessage} with the extractor of
+     * its version. The XML is put into the payload blob store right away, so it never has to be Base64 encoded.
+     */
+    StoredMessage toStoredMessage(Pacs008Version<?, ?, ?> version, Pacs008Fields fields, byte[] xml, String messageId,
+                                  OffsetDateTime receivedTimestamp) {
+        List<AuditTrailEntry> auditTrail = new ArrayList<>();
+        auditTrail.add(AuditTrailEntry.builder()
+                .timestamp(receivedTimestamp)
+                .action("Initial Outgoing Message Receival")
+                .details("DFX Service received initial outgoing message").
+                build()
+        );
+
+        StoredMessage storedMessage = version.toStoredMessage(fields);
+        storedMessage.setMessageId(messageId);
+        storedMessage.setTimestamp(receivedTimestamp);
+        storedMessage.setTransactionStatus(StoredMessage.TransactionStatusEnum.RECEIVED);
+        storedMessage.setAuditTrail(auditTrail);
+        storedMessage.setPayloadRef(messageStorageService.storePayload(xml));
+        return storedMessage;
+    }
+
+    /**
+     * Outcome of ingesting a payload.
+     *
+     * @param messageIds The IDs of the stored messages, one per transaction of the payload.
+     * @param rejected   The number of transactions that were skipped.
+     * @param duplicates The number of transactions that had already been ingested; their messages are part of the
+     *                   message IDs.
+     * @param error      The reason transactions were not stored, or null if all were stored, skipped or duplicates.
+     */
+    public record IngestionResult(List<String> messageIds, int rejected, int duplicates, String error) {
+        /**
+         * Whether messages were stored for the payload, or it only held duplicates. Some transactions may still have
+         * been rejected.
+         */
+        public boolean accepted() {
+            return !messageIds.isEmpty();
+        }
+    }
+
+    /**
+     * @param references The IDs of the new messages and of the messages duplicates are stored as, in document order.
+     * @param reserved   The business identifiers of the new messages and their IDs.
+     * @param rejected   The number of transactions read and not stored.
+     */
+    private record ParsedPayload(List<ConvertedTransaction> transactions, List<CompletableFuture<String>> references,
+                                 Map<String, String> reserved, int duplicates, int rejected, String error) {
+
+        /**
+         * The result of a stored payload. Waits for duplicates of transactions a concurrent submission is storing.
+         *
+         * @param deadline The {@link System#nanoTime()} after which such duplicates are counted as rejected.
+         */
+        IngestionResult result(long deadline) {
+            List<String> messageIds = references.stream()
+                    .map(reference -> awaitOriginal(reference, deadline))
+                    .filter(Objects::nonNull)
+                    .toList();
+            int released = references.size() - messageIds.size();
+            if (released == 0) {
+                return new IngestionResult(messageIds, rejected, duplicates, error);
+            }
+            return new IngestionResult(messageIds, rejected + released, duplicates - released,
+                    released + " transaction(s) submitted concurrently by another request were not stored in time");
+        }
+
+        IngestionResult failed(String reason) {
+            return new IngestionResult(List.of(), transactions.size(), duplicates, reason);
+        }
+    }
+
+    /**
+     * A transaction of a split message. A duplicate has no key and no conversion, its message ID is the one of the
+     * original message.
+     *
+     * @param original The ID of the message a duplicate transaction is stored as, null for a new transaction.
+     */
+    private record PendingTransaction(String key, String messageId, CompletableFuture<ConvertedTransaction> conversion,
+                                      CompletableFuture<String> original) {
+    }
+
+    private static final class SplitProgress {
+        private final List<String> messageIds = new ArrayList<>();
+        private int rejected;
+        private int duplicates;
+    }
+
+    /**
+     * @param fields The fields the message was mapped from.
+     */
+    private record ConvertedTransaction(StoredMessage message, Pacs008Fields fields, String error) {
+    }
+
+    /**
+     * A transaction read from a message.
+     *
+     * @param document The unmarshalled single-transaction message, or null if only the fields were read from the
+     *                 original message.
+     */
+    private record ParsedTransaction<D>(Pacs008Fields fields, D document) {
+    }
+}
@@ -0,0 +1,298 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
+import com.db.swift.dfx.service.storage.IdempotencyIndex;
+import com.db.swift.dfx.service.utils.FileSync;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Bounded intake queue of the asynchronous ingestion mode ({@code dfx.ingestion.async.enabled=true}).
+ * <p>
+ * A message is accepted as soon as its payload is written to the spool directory {@code <dfx.storage.path>/intake}
+ * and both the file and the directory are flushed to disk; a pool of workers then takes it through
+ * {@link MessageIngestionService#ingest} and deletes the spool file. Messages still spooled on startup, because the
+ * service stopped before ingesting them, are ingested again. A message whose transactions were already committed to
+ * the {@link IdempotencyIndex} is answered with its original message; one stored right before a crash, before its
+ * transactions were committed, is stored a second time. With the memory storage backend nothing is spooled and
+ * queued messages are lost on restart.
+ * <p>
+ * If the first transaction of a queued message turns out to be a resubmission, its ID is recorded as an alias of the
+ * original message, so the Location the client got still leads to a message.
+ * <p>
+ * The queue holds at most {@code dfx.ingestion.async.capacity} messages. A message offered to a full queue is not
+ * accepted, so callers can push back on the client instead of piling up requests. The workers wait while the first
+ * stage of the {@link ProcessingPipeline} is full, so a slow pipeline fills up the intake queue rather than piling up
+ * stored messages in front of the stage.
+ */
+@Service
+@Slf4j
+public class MessageIntakeQueue {
+
+    private static final String INTAKE_DIRECTORY = "intake";
+    private static final String SPOOL_SUFFIX = ".pacs008";
+    private static final long PIPELINE_POLL_MILLIS = 50;
+
+    private final MessageIngestionService messageIngestionService;
+    private final IdempotencyIndex idempotencyIndex;
+    private final ProcessingPipeline processingPipeline;
+    private final boolean enabled;
+    private final Duration retryAfter;
+    private final Path spoolDirectory;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger spoolSequence = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public MessageIntakeQueue(MessageIngestionService messageIngestionService,
+                              IdempotencyIndex idempotencyIndex,
+                              ProcessingPipeline processingPipeline,
+                              @Value("${dfx.ingestion.async.enabled:false}") boolean enabled,
+                              @Value("${dfx.ingestion.async.capacity:1000}") int capacity,
+                              @Value("${dfx.ingestion.async.workers:4}") int workerThreads,
+                              @Value("${dfx.ingestion.async.retry-after:PT1S}") Duration retryAfter,
+                              @Value("${dfx.storage.backend:journal}") String backend,
+                              @Value("${dfx.storage.path:/tmp/dfx-messages}") String storagePath,
+                              MeterRegistry meterRegistry) {
+        this.messageIngestionService = messageIngestionService;
+        this.idempotencyIndex = idempotencyIndex;
+        this.processingPipeline = processingPipeline;
+        this.enabled = enabled;
+        this.retryAfter = retryAfter;
+        this.spoolDirectory = "memory".equals(backend) ? null : Paths.get(storagePath, INTAKE_DIRECTORY);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("dfx.ingestion.queue.depth", workers, executor -> executor.getQueue().size())
+                .description("Messages accepted but not yet taken by an ingestion worker")
+                .register(meterRegistry);
+        Gauge.builder("dfx.ingestion.queue.remaining.capacity", workers, executor -> executor.getQueue().remainingCapacity())
+                .description("Messages the intake queue can still accept")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("dfx.ingestion.queue.wait")
+                .description("Time from accepting a message until an ingestion worker takes it")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("dfx.ingestion.queue.rejected")
+                .description("Messages not accepted because the intake queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the messages left in the spool directory by the previous run. They are queued by a background thread
+     * that waits for free capacity, so more spooled messages than fit into the queue do not block the startup.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        if (!enabled || spoolDirectory == null) {
+            return;
+        }
+        Files.createDirectories(spoolDirectory);
+        List<Path> spooled;
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            spooled = files.filter(file -> file.getFileName().toString().endsWith(SPOOL_SUFFIX)).sorted().toList();
+        }
+        if (spooled.isEmpty()) {
+            return;
+        }
+        log.info("Recovering {} spooled message(s) from {}", spooled.size(), spoolDirectory);
+        workers.prestartAllCoreThreads();
+        Thread recovery = new Thread(() -> {
+            BlockingQueue<Runnable> queue = workers.getQueue();
+            for (Path file : spooled) {
+                try {
+                    queue.put(task(readSpoolFile(file)));
+                } catch (IOException | RuntimeException e) {
+                    log.error("Failed to recover spooled message {}", file, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "ingestion-recovery");
+        recovery.setDaemon(true);
+        recovery.start();
+    }
+
+    /**
+     * Stops the workers. Messages still in the queue stay spooled and are ingested on the next start.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Suggested delay before a client retries a message that was not accepted, in whole seconds as sent in the
+     * Retry-After header.
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+
+    /**
+     * Accepts a message for asynchronous ingestion.
+     *
+     * @param xml               The pacs.008 message.
+     * @param messageId         The ID assigned to the message.
+     * @param receivedTimestamp The time the message was received.
+     * @return false if the queue is full and the message was not accepted.
+     * @throws UncheckedIOException if the message can not be spooled.
+     */
+    public boolean offer(byte[] xml, String messageId, OffsetDateTime receivedTimestamp) {
+        // Checked before spooling, so a full queue rejects cheaply. A message slipping through the check is rejected
+        // by the executor below.
+        if (workers.getQueue().remainingCapacity() == 0) {
+            rejectedCounter.increment();
+            return false;
+        }
+        Path file = spool(xml, messageId, receivedTimestamp);
+        try {
+            workers.execute(task(new Intake(xml, messageId, receivedTimestamp, file, System.nanoTime())));
+            return true;
+        } catch (RejectedExecutionException e) {
+            deleteSpoolFile(file);
+            rejectedCounter.increment();
+            return false;
+        }
+    }
+
+    private Runnable task(Intake intake) {
+        return () -> {
+            waitTimer.record(System.nanoTime() - intake.acceptedNanos(), TimeUnit.NANOSECONDS);
+            try {
+                while (!processingPipeline.isAccepting()) {
+                    Thread.sleep(PIPELINE_POLL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                // Shutting down; the message stays spooled.
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                MessageIngestionService.IngestionResult result =
+                        messageIngestionService.ingest(intake.xml(), intake.messageId(), intake.receivedTimestamp());
+                if (!result.accepted()) {
+                    log.error("Failed to process queued message with ID: {}. Reason: {}", intake.messageId(), result.error());
+                } else if (!result.messageIds().contains(intake.messageId())) {
+                    idempotencyIndex.alias(intake.messageId(), result.messageIds().get(0));
+                }
+            } catch (SAXException | IllegalArgumentException | ConstraintViolationException e) {
+                log.error("Failed to process queued message with ID: {}. Reason: {}", intake.messageId(), e.toString());
+            } catch (RuntimeException e) {
+                // Most likely the storage failed; keep the message spooled so it is retried on the next start.
+                log.error("Failed to ingest queued message with ID: {}, it stays spooled", intake.messageId(), e);
+                return;
+            }
+            deleteSpoolFile(intake.spoolFile());
+        };
+    }
+
+    /**
+     * Writes a message to the spool directory and flushes it along with the directory entry: a line with the message ID, a line with the time it
+     * was received, then the XML as it was received. The file names sort in the order the messages were accepted.
+     */
+    private Path spool(byte[] xml, String messageId, OffsetDateTime receivedTimestamp) {
+        if (spoolDirectory == null) {
+            return null;
+        }
+        Path file = spoolDirectory.resolve(String.format("%013d-%05d-%s%s", System.currentTimeMillis(),
+                Math.floorMod(spoolSequence.getAndIncrement(), 100000), messageId, SPOOL_SUFFIX));
+        byte[] header = (messageId + "\n" + receivedTimestamp + "\n").getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer[] buffers = {ByteBuffer.wrap(header), ByteBuffer.wrap(xml)};
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spool message " + messageId, e);
+        }
+        try {
+            FileSync.force(spoolDirectory);
+        } catch (IOException e) {
+            deleteSpoolFile(file);
+            throw new UncheckedIOException("Failed to spool message " + messageId, e);
+        }
+        return file;
+    }
+
+    private static Intake readSpoolFile(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int messageIdEnd = indexOf(content, (byte) '\n', 0);
+        int timestampEnd = indexOf(content, (byte) '\n', messageIdEnd + 1);
+        if (messageIdEnd < 0 || timestampEnd < 0) {
+            throw new IOException("Corrupt spool file " + file);
+        }
+        String messageId = new String(content, 0, messageIdEnd, StandardCharsets.US_ASCII);
+        OffsetDateTime receivedTimestamp = OffsetDateTime.parse(
+                new String(content, messageIdEnd + 1, timestampEnd - messageIdEnd - 1, StandardCharsets.US_ASCII));
+        byte[] xml = Arrays.copyOfRange(content, timestampEnd + 1, content.length);
+        return new Intake(xml, messageId, receivedTimestamp, file, System.nanoTime());
+    }
+
+    private static int indexOf(byte[] content, byte value, int from) {
+        for (int i = from; i < content.length; i++) {
+            if (content[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void deleteSpoolFile(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool file {}", file, e);
+        }
+    }
+
+    /**
+     * @param spoolFile     The spooled copy of the message, null with the memory storage backend.
+     * @param acceptedNanos {@link System#nanoTime()} when the message was queued.
+     */
+    private record Intake(byte[] xml, String messageId, OffsetDateTime receivedTimestamp, Path spoolFile,
+                          long acceptedNanos) {
+    }
+}
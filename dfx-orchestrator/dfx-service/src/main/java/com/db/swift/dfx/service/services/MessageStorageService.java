@@ -1,102 +1,352 @@
 package com.db.swift.dfx.service.services;
 
 import com.db.swift.dfx.openapi.model.AuditTrailEntry;
+import com.db.swift.dfx.openapi.model.MessageSummary;
 import com.db.swift.dfx.openapi.model.StoredMessage;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.db.swift.dfx.service.events.MessageChangedEvent;
+import com.db.swift.dfx.service.storage.ChangeSequencer;
+import com.db.swift.dfx.service.storage.IndexedMessageStore;
+import com.db.swift.dfx.service.storage.MessageArchive;
+import com.db.swift.dfx.service.storage.MessageCursor;
+import com.db.swift.dfx.service.storage.MessagePage;
+import com.db.swift.dfx.service.storage.MessageQuery;
+import com.db.swift.dfx.service.storage.MessageRepository;
+import com.db.swift.dfx.service.storage.MessageVersionConflictException;
+import com.db.swift.dfx.service.storage.PayloadBlobStore;
+import com.db.swift.dfx.service.utils.StripedLock;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Base64;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class MessageStorageService {
 
-    @Value("${dfx.storage.path:/tmp/dfx-messages}")
-    private String storagePath;
-    private final ObjectMapper objectMapper;
+    private static final long INITIAL_VERSION = 1L;
+    private static final Set<StoredMessage.TransactionStatusEnum> TERMINAL_STATES =
+            Set.of(StoredMessage.TransactionStatusEnum.COMPLETED, StoredMessage.TransactionStatusEnum.FAILED);
+    private static final Base64 base64 = new Base64();
+    /**
+     * How often messages changed while being archived are archived again within one run.
+     */
+    private static final int MAX_ARCHIVE_ATTEMPTS = 2;
+
+    private final MessageRepository messageRepository;
+    private final IndexedMessageStore indexedMessageStore;
+    private final PayloadBlobStore payloadBlobStore;
+    private final MessageArchive messageArchive;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean archiveEnabled;
+    private final Duration archiveMaxAge;
 
-    private final Lock fileLock = new ReentrantLock();
-    private static final String STORAGE_FILE_NAME = "messages.json";
+    /**
+     * Positions of the changes in the global change sequence, see {@link #findChanges(long, int)}.
+     * Created once all messages are loaded.
+     */
+    private ChangeSequencer changeSequencer;
+    /**
+     * Identifies this instance in the state tag, so tags handed out before a restart never match.
+     */
+    private final String instanceTag = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong removals = new AtomicLong();
 
     /**
-     * Persists a message by adding it to a single JSON file containing an array of all messages.
+     * Locks keyed by messageId. Writes to different messages proceed in parallel,
+     * reads are served lock-free from the resident store.
+     */
+    private final StripedLock messageLocks;
+
+    public MessageStorageService(MessageRepository messageRepository, IndexedMessageStore indexedMessageStore,
+                                 PayloadBlobStore payloadBlobStore, MessageArchive messageArchive,
+                                 ApplicationEventPublisher eventPublisher,
+                                 @Value("${dfx.storage.lock-stripes:64}") int lockStripes,
+                                 @Value("${dfx.storage.archive.enabled:true}") boolean archiveEnabled,
+                                 @Value("${dfx.storage.archive.max-age:P30D}") Duration archiveMaxAge) {
+        this.messageRepository = messageRepository;
+        this.indexedMessageStore = indexedMessageStore;
+        this.payloadBlobStore = payloadBlobStore;
+        this.messageArchive = messageArchive;
+        this.eventPublisher = eventPublisher;
+        this.messageLocks = new StripedLock(lockStripes);
+        this.archiveEnabled = archiveEnabled;
+        this.archiveMaxAge = archiveMaxAge;
+    }
+
+    /**
+     * Loads all messages from the message repository into the resident store, so lookups and queries
+     * never have to touch the disk afterwards. Payloads still stored inline by older versions
+     * are moved to the payload blob store on the way.
+     * The change sequence continues after the highest position used by a stored or archived message;
+     * messages stored before the change sequence existed are appended to it.
+     */
+    @PostConstruct
+    public void loadMessages() {
+        List<StoredMessage> messages = messageRepository.findAll();
+        long lastChangeSeq = messages.stream()
+                .map(StoredMessage::getChangeSeq)
+                .filter(Objects::nonNull)
+                .reduce(messageArchive.getMaxChangeSeq(), Math::max);
+        changeSequencer = new ChangeSequencer(lastChangeSeq);
+        messages.forEach(message -> {
+            externalizePayloads(message);
+            if (message.getChangeSeq() == null) {
+                long changeSeq = changeSequencer.next();
+                message.setChangeSeq(changeSeq);
+                changeSequencer.complete(changeSeq);
+            }
+            indexedMessageStore.put(message);
+        });
+        log.info("Loaded {} message(s) into the indexed message store, change sequence at {}",
+                indexedMessageStore.size(), changeSequencer.visible());
+    }
+
+    /**
+     * Persists a message in the configured message repository.
+     * The message starts with its initial version; its payloads are moved to the payload blob store
+     * and only their references are kept in the record.
      * This operation is thread-safe to handle concurrent API calls.
      *
      * @param message The StoredMessage object to persist.
      */
     public void storeMessage(StoredMessage message) {
-        fileLock.lock();
+        externalizePayloads(message);
+        Lock lock = messageLocks.get(message.getMessageId());
+        lock.lock();
         try {
-            List<StoredMessage> messages = readMessagesFromFile();
-
-            message.addAuditTrailItem(AuditTrailEntry.builder()
-                    .timestamp(OffsetDateTime.now())
-                    .action("Persisting message to Storage")
-                    .details("This message is now being stored into the storage")
-                    .build()
-            );
-
-            messages.add(message);
-            writeMessagesToFile(messages);
-            log.info("Successfully stored message {} in: {}", message.getMessageId(), getStorageFilePath());
+            addPersistingAuditTrailItem(message);
+            message.setVersion(INITIAL_VERSION);
+            long changeSeq = changeSequencer.next();
+            try {
+                message.setChangeSeq(changeSeq);
+                messageRepository.save(message);
+                indexedMessageStore.put(message);
+            } finally {
+                changeSequencer.complete(changeSeq);
+            }
+            eventPublisher.publishEvent(new MessageChangedEvent(this, null, message));
+            log.info("Successfully stored message {} in the message repository", message.getMessageId());
         } finally {
-            fileLock.unlock();
+            lock.unlock();
         }
     }
 
     /**
-     * Retrieves all stored messages from the JSON file.
-     * This operation is thread-safe to prevent reading a partially written file.
+     * Persists several new messages with a single commit to the message repository. Either all messages are
+     * stored or, if the commit fails, none of them becomes visible.
+     * This operation is thread-safe to handle concurrent API calls.
      *
-     * @return A list of all StoredMessage objects, or an empty list if none exist or an error occurs.
+     * @param messages The StoredMessage objects to persist.
      */
-    public List<StoredMessage> getAllMessages() {
-        fileLock.lock();
+    public void storeMessages(List<StoredMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        messages.forEach(this::externalizePayloads);
+        List<Lock> locks = messageLocks.getAll(messages.stream().map(StoredMessage::getMessageId).toList());
+        locks.forEach(Lock::lock);
         try {
-            return readMessagesFromFile();
+            long[] changeSeqs = new long[messages.size()];
+            try {
+                for (int i = 0; i < messages.size(); i++) {
+                    StoredMessage message = messages.get(i);
+                    addPersistingAuditTrailItem(message);
+                    message.setVersion(INITIAL_VERSION);
+                    changeSeqs[i] = changeSequencer.next();
+                    message.setChangeSeq(changeSeqs[i]);
+                }
+                messageRepository.saveAll(messages);
+                messages.forEach(indexedMessageStore::put);
+            } finally {
+                for (long changeSeq : changeSeqs) {
+                    if (changeSeq != 0) {
+                        changeSequencer.complete(changeSeq);
+                    }
+                }
+            }
+            messages.forEach(message -> eventPublisher.publishEvent(new MessageChangedEvent(this, null, message)));
+            log.info("Successfully stored {} messages in the message repository", messages.size());
         } finally {
-            fileLock.unlock();
+            locks.forEach(Lock::unlock);
         }
     }
 
+    private static void addPersistingAuditTrailItem(StoredMessage message) {
+        message.addAuditTrailItem(AuditTrailEntry.builder()
+                .timestamp(OffsetDateTime.now())
+                .action("Persisting message to Storage")
+                .details("This message is now being stored into the storage")
+                .build()
+        );
+    }
+
     /**
-     * Finds a single message by its ID from the storage file.
-     * This operation is thread-safe.
+     * Retrieves all stored messages from the resident store, ordered by their timestamp.
+     *
+     * @return A list of all StoredMessage objects, or an empty list if none exist.
+     */
+    public List<StoredMessage> getAllMessages() {
+        return indexedMessageStore.find(MessageQuery.all());
+    }
+
+    /**
+     * Retrieves the IDs of the stored messages waiting for a pipeline stage, without reading the messages.
+     *
+     * @return The position of the stage every unfinished message waits for, by message ID.
+     */
+    public Map<String, Integer> findPipelineStages() {
+        return indexedMessageStore.findPipelineStages();
+    }
+
+    /**
+     * Retrieves all stored messages matching the given query using the secondary indexes
+     * of the resident store, ordered by their timestamp.
+     *
+     * @param query The filter criteria.
+     * @return A list of all matching StoredMessage objects.
+     */
+    public List<StoredMessage> findMessages(MessageQuery query) {
+        return indexedMessageStore.find(query);
+    }
+
+    /**
+     * Retrieves a page of the stored messages matching the given query, ordered by their timestamp.
+     *
+     * @param query The filter criteria.
+     * @param after The cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of messages on the page.
+     * @return The page of matching StoredMessage objects and the cursor of the next page.
+     */
+    public MessagePage<StoredMessage> findMessages(MessageQuery query, MessageCursor after, int limit) {
+        return indexedMessageStore.find(query, after, limit);
+    }
+
+    /**
+     * Retrieves a page of the summaries of the stored messages matching the given query, ordered by their timestamp.
+     * Summaries are prepared when a message is stored, so neither payloads nor audit trails are read.
+     *
+     * @param query The filter criteria.
+     * @param after The cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of summaries on the page.
+     * @return The page of matching MessageSummary objects and the cursor of the next page.
+     */
+    public MessagePage<MessageSummary> findMessageSummaries(MessageQuery query, MessageCursor after, int limit) {
+        return indexedMessageStore.findSummaries(query, after, limit);
+    }
+
+    /**
+     * Retrieves the messages whose latest change comes after the given position in the change sequence,
+     * ordered by that position. Changes that are still being written, and all changes after them, are held back,
+     * so a client passing the last position it received never misses a change.
+     *
+     * @param since The last position already seen by the caller.
+     * @param limit The maximum number of messages to return.
+     * @return The changed messages.
+     */
+    public List<StoredMessage> findChanges(long since, int limit) {
+        return indexedMessageStore.findChanges(since, changeSequencer.visible(), limit);
+    }
+
+    /**
+     * Returns the latest position in the change sequence up to which all changes are visible.
+     */
+    public long getChangeSequence() {
+        return changeSequencer.visible();
+    }
+
+    /**
+     * Returns a tag identifying the current state of the working set. The tag changes whenever a message is stored,
+     * updated or archived, and after a restart. It has to be read before the messages it should describe.
+     */
+    public String getStateTag() {
+        return instanceTag + "-" + changeSequencer.visible() + "-" + removals.get();
+    }
+
+    /**
+     * Finds a single message by its ID using the primary index of the resident store, falling back to the
+     * message archive for messages that were already moved out of the working set.
+     * The payloads are not loaded, see {@link #loadPayload(StoredMessage)} and {@link #withPayloads(StoredMessage)}.
      *
      * @param messageId The UUID of the message to find.
      * @return An Optional containing the StoredMessage if found.
      */
     public Optional<StoredMessage> findMessageById(String messageId) {
-        fileLock.lock();
-        try {
-            return readMessagesFromFile().stream()
-                    .filter(m -> m.getMessageId().equals(messageId))
-                    .findFirst();
-        } finally {
-            fileLock.unlock();
-        }
+        return indexedMessageStore.get(messageId).or(() -> messageArchive.findById(messageId));
+    }
+
+    /**
+     * Stores a raw payload in the payload blob store, so it can be attached to a message as
+     * {@code payloadRef} or {@code fxtrPayloadRef} without a Base64 round trip.
+     *
+     * @param content The uncompressed payload.
+     * @return The reference of the stored payload.
+     */
+    public String storePayload(byte[] content) {
+        return payloadBlobStore.put(content);
+    }
+
+    /**
+     * Loads the original message payload (e.g. the pacs.008 XML) of a message.
+     *
+     * @param message The message whose payload should be loaded.
+     * @return The decoded payload, or null if the message has none.
+     */
+    public byte[] loadPayload(StoredMessage message) {
+        return loadBlob(message.getPayload(), message.getPayloadRef());
+    }
+
+    /**
+     * Loads the FX Trade Message (fxtr.014 XML) created for a message.
+     *
+     * @param message The message whose FX Trade Message should be loaded.
+     * @return The decoded FX Trade Message, or null if none was created yet.
+     */
+    public byte[] loadFxtrPayload(StoredMessage message) {
+        return loadBlob(message.getFxtrPayload(), message.getFxtrPayloadRef());
+    }
+
+    /**
+     * Fills the Base64 encoded {@code payload} and {@code fxtrPayload} fields of a message from the
+     * payload blob store, for callers that need to hand out the full message.
+     *
+     * @param message The message to complete.
+     * @return The same message instance with its payloads set.
+     */
+    public StoredMessage withPayloads(StoredMessage message) {
+        byte[] payload = loadPayload(message);
+        byte[] fxtrPayload = loadFxtrPayload(message);
+        message.setPayload(payload == null ? null : base64.encodeToString(payload));
+        message.setFxtrPayload(fxtrPayload == null ? null : base64.encodeToString(fxtrPayload));
+        return message;
     }
 
 
     /**
-     * Updates an existing message in the storage file. This is critical for
+     * Updates an existing message by saving its new state to the message repository. This is critical for
      * saving the results of the LEI verification.
+     * The update is only applied if the message still has the version it was read with; on success the
+     * version of the passed object is incremented, so the caller can keep working with it.
      * This operation is thread-safe.
      *
      * @param updatedMessage The message object with updated information.
+     * @throws MessageVersionConflictException if another stage persisted the message in the meantime.
      */
     public void updateMessage(StoredMessage updatedMessage) {
         if (updatedMessage == null || updatedMessage.getMessageId() == null) {
@@ -104,68 +354,146 @@ public class MessageStorageService {
             return;
         }
 
-        fileLock.lock();
+        externalizePayloads(updatedMessage);
+        Lock lock = messageLocks.get(updatedMessage.getMessageId());
+        lock.lock();
         try {
-            List<StoredMessage> messages = readMessagesFromFile();
-
-            // Find the index of the message to update
-            int messageIndex = -1;
-            for (int i = 0; i < messages.size(); i++) {
-                if (messages.get(i).getMessageId().equals(updatedMessage.getMessageId())) {
-                    messageIndex = i;
-                    break;
-                }
+            Optional<StoredMessage> currentMessage = indexedMessageStore.get(updatedMessage.getMessageId());
+            if (currentMessage.isEmpty()) {
+                log.warn("Could not find message with ID {} to update. No changes were made.", updatedMessage.getMessageId());
+                return;
             }
 
-            if (messageIndex != -1) {
-                // Replace the old message with the updated one
-                messages.set(messageIndex, updatedMessage);
-                writeMessagesToFile(messages);
-                log.info("Successfully updated message with ID: {}", updatedMessage.getMessageId());
-            } else {
-                log.warn("Could not find message with ID {} to update. No changes were made.", updatedMessage.getMessageId());
+            long currentVersion = versionOf(currentMessage.get());
+            long expectedVersion = versionOf(updatedMessage);
+            if (currentVersion != expectedVersion) {
+                throw new MessageVersionConflictException(updatedMessage.getMessageId(), expectedVersion, currentVersion);
             }
+
+            Long previousChangeSeq = updatedMessage.getChangeSeq();
+            long changeSeq = changeSequencer.next();
+            updatedMessage.setVersion(currentVersion + 1);
+            updatedMessage.setChangeSeq(changeSeq);
+            try {
+                messageRepository.save(updatedMessage);
+                indexedMessageStore.put(updatedMessage);
+            } catch (RuntimeException e) {
+                updatedMessage.setVersion(currentVersion);
+                updatedMessage.setChangeSeq(previousChangeSeq);
+                throw e;
+            } finally {
+                changeSequencer.complete(changeSeq);
+            }
+            eventPublisher.publishEvent(new MessageChangedEvent(this, currentMessage.get(), updatedMessage));
+            log.info("Successfully updated message with ID: {} to version {}", updatedMessage.getMessageId(), updatedMessage.getVersion());
         } finally {
-            fileLock.unlock();
+            lock.unlock();
         }
     }
 
     /**
-     * Helper method to read the list of messages from the JSON file.
-     * This method assumes a lock is already held by the calling public method.
+     * Moves messages in a terminal state (COMPLETED or FAILED) whose last activity is older than the configured
+     * maximum age from the working set into the message archive. Archived messages are no longer returned by
+     * queries but can still be found by their ID.
+     * <p>
+     * A message is only removed from the working set if, under its lock, it still has the version that was
+     * archived. A message changed meanwhile is archived again in its current state if it still qualifies, so the
+     * archive never ends up with a stale copy of a removed message; otherwise it stays in the working set.
      */
-    private List<StoredMessage> readMessagesFromFile() {
-        Path filePath = getStorageFilePath();
-        try {
-            if (Files.exists(filePath) && Files.size(filePath) > 0) {
-                return objectMapper.readValue(filePath.toFile(),objectMapper.getTypeFactory()
-                        .constructCollectionType(List.class, StoredMessage.class));
+    @Scheduled(fixedDelayString = "${dfx.storage.archive.interval:PT1H}",
+            initialDelayString = "${dfx.storage.archive.interval:PT1H}")
+    public void archiveMessages() {
+        if (!archiveEnabled) {
+            return;
+        }
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(archiveMaxAge);
+        List<StoredMessage> candidates = new ArrayList<>();
+        for (StoredMessage.TransactionStatusEnum status : TERMINAL_STATES) {
+            indexedMessageStore.find(MessageQuery.builder().transactionStatus(status).build()).stream()
+                    .filter(message -> isArchivable(message, cutoff))
+                    .forEach(candidates::add);
+        }
+
+        int archived = 0;
+        for (int attempt = 0; attempt < MAX_ARCHIVE_ATTEMPTS && !candidates.isEmpty(); attempt++) {
+            // The archive is written first, so a crash in between leaves a message in both tiers rather than in none.
+            messageArchive.archive(candidates);
+            List<StoredMessage> changed = new ArrayList<>();
+            for (StoredMessage candidate : candidates) {
+                Lock lock = messageLocks.get(candidate.getMessageId());
+                lock.lock();
+                try {
+                    Optional<StoredMessage> current = indexedMessageStore.get(candidate.getMessageId());
+                    if (current.isEmpty()) {
+                        continue;
+                    }
+                    if (versionOf(current.get()) != versionOf(candidate)) {
+                        if (isArchivable(current.get(), cutoff)) {
+                            changed.add(current.get());
+                        }
+                        continue;
+                    }
+                    messageRepository.delete(candidate.getMessageId());
+                    indexedMessageStore.remove(candidate.getMessageId());
+                    removals.incrementAndGet();
+                    archived++;
+                } finally {
+                    lock.unlock();
+                }
             }
-        } catch (IOException e) {
-            log.error("Failed to read messages from file: {}", filePath, e);
-            // Return an empty list on error to prevent cascading failures.
-            return new ArrayList<>();
+            candidates = changed;
         }
-        // If the file doesn't exist or is empty, start with a fresh list.
-        return new ArrayList<>();
+        if (!candidates.isEmpty()) {
+            log.info("{} message(s) kept changing while being archived, keeping them in the working set", candidates.size());
+        }
+        if (archived > 0) {
+            log.info("Moved {} message(s) older than {} to the message archive", archived, archiveMaxAge);
+        }
+    }
+
+    private static boolean isArchivable(StoredMessage message, OffsetDateTime cutoff) {
+        OffsetDateTime lastActivity = lastActivityOf(message);
+        return TERMINAL_STATES.contains(message.getTransactionStatus()) && lastActivity != null && lastActivity.isBefore(cutoff);
     }
 
     /**
-     * Helper method to write the list of messages to the JSON file.
-     * This method assumes a lock is already held by the calling public method.
+     * The time of the latest audit trail entry, or the time the message was received if it has none.
      */
-    private void writeMessagesToFile(List<StoredMessage> messages) {
-        Path filePath = getStorageFilePath();
-        try {
-            Files.createDirectories(filePath.getParent());
-            String jsonContent = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(messages);
-            Files.writeString(filePath, jsonContent);
-        } catch (IOException e) {
-            log.error("Failed to write messages to file: {}", filePath, e);
+    private static OffsetDateTime lastActivityOf(StoredMessage message) {
+        if (message.getAuditTrail() == null) {
+            return message.getTimestamp();
+        }
+        return message.getAuditTrail().stream()
+                .map(AuditTrailEntry::getTimestamp)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(message.getTimestamp());
+    }
+
+    private static long versionOf(StoredMessage message) {
+        // Messages persisted before versioning was introduced count as version 0.
+        return message.getVersion() == null ? 0L : message.getVersion();
+    }
+
+    /**
+     * Moves inline Base64 payloads of a message into the payload blob store and replaces them by
+     * their references. Unchanged payloads map to the blob that is already stored.
+     */
+    private void externalizePayloads(StoredMessage message) {
+        if (message.getPayload() != null) {
+            message.setPayloadRef(payloadBlobStore.put(base64.decode(message.getPayload())));
+            message.setPayload(null);
+        }
+        if (message.getFxtrPayload() != null) {
+            message.setFxtrPayloadRef(payloadBlobStore.put(base64.decode(message.getFxtrPayload())));
+            message.setFxtrPayload(null);
         }
     }
 
-    private Path getStorageFilePath() {
-        return Paths.get(storagePath, STORAGE_FILE_NAME);
+    private byte[] loadBlob(String inlineBase64, String reference) {
+        if (inlineBase64 != null) {
+            return base64.decode(inlineBase64);
+        }
+        return reference == null ? null : payloadBlobStore.get(reference);
     }
-}
\ No newline at end of file
+}
@@ -4,27 +4,23 @@ import com.db.swift.dfx.openapi.model.AuditTrailEntry;
 import com.db.swift.dfx.openapi.model.StoredMessage;
 import com.db.swift.dfx.openapi.model.VerificationStatus;
 import com.db.swift.dfx.service.dto.gleif.GleifApiResponse;
-import com.db.swift.dfx.service.events.LEIVerificationSuccessfulEvent;
+import com.db.swift.dfx.service.pipeline.PipelineContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientException;
 
 import java.time.OffsetDateTime;
 import java.util.List;
-import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class VerificationService {
 
-    private final MessageStorageService messageStorageService;
     private final RestClient leiRestClient;
-    private final ApplicationEventPublisher eventPublisher;
     private final static String DEBITOR = "debitor";
     private final static String CREDITOR = "creditor";
 
@@ -33,24 +29,21 @@ public class VerificationService {
 
     /**
      * Verifies the Debtor and Creditor LEIs for a given message by calling an external API.
-     * It updates the message's status and audit trail in the storage.
-     * This method is designed to be called asynchronously (e.g., from an event listener).
+     * It updates the message's status and audit trail in the pipeline context, which the pipeline persists.
+     * This method is designed to be called by the LEI verification stage of the pipeline.
      *
-     * @param messageId The ID of the message to verify.
+     * @param context The message to verify.
+     * @return true if both LEIs were verified.
      */
-    public void verifyLeisForMessage(String messageId) {
+    public boolean verifyLeisForMessage(PipelineContext context) {
+        String messageId = context.getMessageId();
         log.info("Starting LEI verification process for messageId: {}", messageId);
 
-        // Step 1: Find the message in storage.
-        Optional<StoredMessage> messageOptional = messageStorageService.findMessageById(messageId);
-        if (messageOptional.isEmpty()) {
-            log.error("Could not find message with ID {} for LEI verification.", messageId);
-            return;
-        }
-        StoredMessage message = messageOptional.get();
+        // Step 1: Take the message from the pipeline context.
+        StoredMessage message = context.getMessage();
         message.setTransactionStatus(StoredMessage.TransactionStatusEnum.LEI_VERIFICATION_IN_PROGRESS);
         message.addAuditTrailItem(createAuditEntry("Started LEI Verification", "LEI Verification is now in Progress"));
-        messageStorageService.updateMessage(message);
+        context.markChanged();
 
         // Step 2: Verify Creditor and Debtor LEIs.
         message = verifySingleLei(message, CREDITOR);
@@ -59,19 +52,20 @@ public class VerificationService {
         message = verifySingleLei(message, DEBITOR);
         message.addAuditTrailItem(createAuditEntry("Debitor LEI Verification", "Verification status: " + message.getDebitorLEIStatus()));
 
-        if (message.getCreditorLEIStatus() == VerificationStatus.VERIFIED && message.getDebitorLEIStatus() == VerificationStatus.VERIFIED) {
+        boolean verified = message.getCreditorLEIStatus() == VerificationStatus.VERIFIED && message.getDebitorLEIStatus() == VerificationStatus.VERIFIED;
+        if (verified) {
             log.info("Both LEIs verified successfully for messageId: {}", messageId);
-            eventPublisher.publishEvent(new LEIVerificationSuccessfulEvent(this, messageId));
         } else {
             log.error("LEI verification failed for messageId: {}. Creditor: {}, Debitor: {}", messageId, message.getCreditorLEIStatus(), message.getDebitorLEIStatus() );
             message.setTransactionStatus(StoredMessage.TransactionStatusEnum.FAILED);
         }
 
 
-        // Step 3: Persist the updated message with new status and audit trail.
-        messageStorageService.updateMessage(message);
+        // Step 3: The pipeline persists the updated message with new status and audit trail.
+        // The next stage is only triggered afterwards, so it continues from the persisted version.
         log.info("Completed LEI verification for messageId: {}. Creditor: {}, Debitor: {}",
                 messageId, message.getCreditorLEIStatus(), message.getDebitorLEIStatus());
+        return verified;
     }
 
     /**
@@ -0,0 +1,45 @@
+package com.db.swift.dfx.service.storage;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Hands out the positions of the global change sequence and tracks which of them are visible.
+ * <p>
+ * Writers to different messages run in parallel, so a change may be applied after a change with a higher position.
+ * A position is therefore only visible once all lower positions are applied as well; readers of the change feed
+ * never skip a change that is still in flight.
+ */
+public class ChangeSequencer {
+
+    private final NavigableSet<Long> inFlight = new TreeSet<>();
+    private long last;
+
+    /**
+     * @param start The latest position already used, new positions start right after it.
+     */
+    public ChangeSequencer(long start) {
+        this.last = start;
+    }
+
+    /**
+     * Reserves the next position. Every reserved position has to be released with {@link #complete(long)}
+     * once the change is applied, or abandoned.
+     */
+    public synchronized long next() {
+        last++;
+        inFlight.add(last);
+        return last;
+    }
+
+    public synchronized void complete(long position) {
+        inFlight.remove(position);
+    }
+
+    /**
+     * Returns the highest position up to which all changes are applied.
+     */
+    public synchronized long visible() {
+        return inFlight.isEmpty() ? last : inFlight.first() - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.service.utils.FileSync;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File based {@link PayloadBlobStore} used by all persistent storage backends.
+ * <p>
+ * Each blob is stored gzip-compressed under its SHA-256 hash in {@code <dfx.storage.path>/blobs}. A blob is on disk
+ * before its reference is returned, so a durable message record never points to a blob lost in a crash.
+ */
+@Component
+@ConditionalOnExpression("'${dfx.storage.backend:journal}' != 'memory'")
+@Slf4j
+public class FilePayloadBlobStore implements PayloadBlobStore {
+
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final String BLOB_SUFFIX = ".gz";
+
+    private final Path blobDirectory;
+
+    public FilePayloadBlobStore(@Value("${dfx.storage.path:/tmp/dfx-messages}") String storagePath) {
+        this.blobDirectory = Paths.get(storagePath, BLOB_DIRECTORY);
+    }
+
+    @Override
+    public String put(byte[] content) {
+        String reference = DigestUtils.sha256Hex(content);
+        Path blobPath = resolve(reference);
+        if (Files.exists(blobPath)) {
+            return reference;
+        }
+        try {
+            if (!Files.isDirectory(blobPath.getParent())) {
+                Files.createDirectories(blobPath.getParent());
+                FileSync.force(blobDirectory);
+            }
+            Path tempFile = Files.createTempFile(blobPath.getParent(), reference, ".tmp");
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(tempFile))) {
+                outputStream.write(content);
+            }
+            FileSync.force(tempFile);
+            // Concurrent writers of the same content produce identical files, so the last move simply wins.
+            Files.move(tempFile, blobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileSync.force(blobPath.getParent());
+            log.debug("Stored blob {} ({} bytes uncompressed)", reference, content.length);
+            return reference;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store blob " + reference, e);
+        }
+    }
+
+    @Override
+    public byte[] get(String reference) {
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(resolve(reference)))) {
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load blob " + reference, e);
+        }
+    }
+
+    private Path resolve(String reference) {
+        PayloadBlobStore.validate(reference);
+        // Fan out into sub-directories by the first two hex digits to keep directories small.
+        return blobDirectory.resolve(reference.substring(0, 2)).resolve(reference + BLOB_SUFFIX);
+    }
+}
@@ -0,0 +1,123 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * {@link MessageRepository} backed by an embedded, file based H2 database ({@code dfx.storage.backend=h2}).
+ * <p>
+ * The database runs in-process, so no external server is needed. Every message is stored as one row holding
+ * its JSON representation; the version is kept in its own column to make the table easy to inspect.
+ */
+@Component
+@ConditionalOnProperty(name = "dfx.storage.backend", havingValue = "h2")
+@Slf4j
+public class H2MessageRepository implements MessageRepository {
+
+    private static final String DATABASE_DIRECTORY = "h2";
+    private static final String DATABASE_NAME = "messages";
+    private static final String MERGE = "MERGE INTO stored_message (message_id, version, record) KEY (message_id) VALUES (?, ?, ?)";
+
+    private final ObjectMapper objectMapper;
+    private final JdbcConnectionPool connectionPool;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final RowMapper<StoredMessage> rowMapper = (resultSet, rowNum) -> deserialize(resultSet.getString("record"));
+
+    public H2MessageRepository(ObjectMapper objectMapper,
+                               @Value("${dfx.storage.path:/tmp/dfx-messages}") String storagePath,
+                               @Value("${dfx.storage.h2.max-connections:10}") int maxConnections) {
+        // Null fields are omitted to keep the records compact.
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        String url = "jdbc:h2:file:" + Paths.get(storagePath, DATABASE_DIRECTORY, DATABASE_NAME).toAbsolutePath();
+        this.connectionPool = JdbcConnectionPool.create(url, "sa", "");
+        this.connectionPool.setMaxConnections(maxConnections);
+        this.jdbcTemplate = new JdbcTemplate(connectionPool);
+        this.transactionTemplate = new TransactionTemplate(new JdbcTransactionManager(connectionPool));
+        log.info("Using embedded H2 message repository at {}", url);
+    }
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS stored_message (
+                    message_id VARCHAR(64) PRIMARY KEY,
+                    version    BIGINT,
+                    record     CLOB NOT NULL
+                )""");
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    @Override
+    public void save(StoredMessage message) {
+        jdbcTemplate.update(MERGE, message.getMessageId(), message.getVersion(), serialize(message));
+    }
+
+    /**
+     * Merges all messages with one JDBC batch in a single transaction.
+     */
+    @Override
+    public void saveAll(Collection<StoredMessage> messages) {
+        List<Object[]> rows = messages.stream()
+                .map(message -> new Object[]{message.getMessageId(), message.getVersion(), serialize(message)})
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(MERGE, rows));
+    }
+
+    @Override
+    public void delete(String messageId) {
+        jdbcTemplate.update("DELETE FROM stored_message WHERE message_id = ?", messageId);
+    }
+
+    @Override
+    public Optional<StoredMessage> findById(String messageId) {
+        return jdbcTemplate.query("SELECT record FROM stored_message WHERE message_id = ?", rowMapper, messageId)
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public List<StoredMessage> findAll() {
+        return jdbcTemplate.query("SELECT record FROM stored_message", rowMapper);
+    }
+
+    private String serialize(StoredMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to serialize message " + message.getMessageId(), e);
+        }
+    }
+
+    private StoredMessage deserialize(String record) {
+        try {
+            return objectMapper.readValue(record, StoredMessage.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to read message record from H2", e);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.db.swift.dfx.service.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Maps the business identifiers of ingested transactions to the ID of the message they were stored as, so a
+ * resubmitted transaction can be answered with the original message instead of being processed again.
+ * <p>
+ * Keys are reduced to a 128-bit fingerprint and message IDs are kept as {@link UUID}s, so an entry needs about
+ * 100 bytes of heap. The index holds at most {@code dfx.ingestion.idempotency.max-entries} entries and evicts the
+ * oldest ones first; a resubmission of an evicted transaction is processed as a new message.
+ * <p>
+ * A transaction is reserved while its message is being stored. A concurrent submission of the same transaction
+ * gets a future that completes with the ID once the message is stored, so it never answers with a message that
+ * may still fail to be stored.
+ * <p>
+ * With a persistent storage backend, committed entries are appended as fixed-size records to
+ * {@code <dfx.storage.path>/idempotency.idx} and forced to disk before the commit returns. The file is replayed
+ * on startup and rewritten once it holds twice as many records as the index. A message is stored before its entry
+ * is committed, so after a crash in between a retry of the transaction is still processed as a new message. The same
+ * holds for entries that fail to be written: the records written so far are cut off again, so the file stays
+ * aligned to whole records. If that fails as well, the index stops taking new transactions and reports itself down.
+ * <p>
+ * The index also keeps aliases: the ID a queued message was accepted under, mapped to the message its first
+ * transaction was stored as, if that was an earlier message. Aliases are evicted like the other entries.
+ * <p>
+ * With {@code dfx.ingestion.idempotency.enabled=false} every transaction is treated as new, e.g. to replay the same
+ * example message repeatedly.
+ */
+@Component
+@Slf4j
+public class IdempotencyIndex implements HealthIndicator {
+
+    private static final String INDEX_FILE_NAME = "idempotency.idx";
+    private static final int RECORD_SIZE = 4 * Long.BYTES;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Path indexFile;
+    private final Map<Fingerprint, UUID> entries;
+    private final Map<Fingerprint, Reservation> reservations = new HashMap<>();
+    private final Counter duplicates;
+    private final Counter writeFailures;
+    private FileChannel channel;
+    // Not a monitor: commit writes to the index file while holding it, which would pin a virtual thread.
+    private final Lock lock = new ReentrantLock();
+    private long records;
+    private IOException writeFailure;
+
+    public IdempotencyIndex(@Value("${dfx.ingestion.idempotency.enabled:true}") boolean enabled,
+                            @Value("${dfx.ingestion.idempotency.max-entries:500000}") int maxEntries,
+                            @Value("${dfx.storage.backend:journal}") String backend,
+                            @Value("${dfx.storage.path:/tmp/dfx-messages}") String storagePath,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.indexFile = !enabled || "memory".equals(backend) ? null : Paths.get(storagePath, INDEX_FILE_NAME);
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, UUID> eldest) {
+                return size() > IdempotencyIndex.this.maxEntries;
+            }
+        };
+        Gauge.builder("dfx.ingestion.idempotency.entries", this, IdempotencyIndex::size)
+                .description("Transactions known to the idempotency index")
+                .register(meterRegistry);
+        this.duplicates = Counter.builder("dfx.ingestion.idempotency.duplicates")
+                .description("Resubmitted transactions answered from the idempotency index")
+                .register(meterRegistry);
+        this.writeFailures = Counter.builder("dfx.ingestion.idempotency.write.failures")
+                .description("Commits whose entries failed to be written to the index file")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Replays the index file. A record cut off by a crash is discarded.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        Files.createDirectories(indexFile.getParent());
+        channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 2048);
+        long position = 0;
+        while (channel.read(buffer, position + buffer.position()) > 0 || buffer.position() > 0) {
+            buffer.flip();
+            if (buffer.remaining() < RECORD_SIZE) {
+                break;
+            }
+            while (buffer.remaining() >= RECORD_SIZE) {
+                Fingerprint fingerprint = new Fingerprint(buffer.getLong(), buffer.getLong());
+                entries.put(fingerprint, new UUID(buffer.getLong(), buffer.getLong()));
+                position += RECORD_SIZE;
+                records++;
+            }
+            buffer.compact();
+        }
+        if (channel.size() != position) {
+            log.warn("Discarding {} byte(s) of an incomplete record at the end of {}", channel.size() - position, indexFile);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        log.info("Opened idempotency index {} with {} entries", indexFile, entries.size());
+        if (records > entries.size()) {
+            rewrite();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a transaction and reserves it for a new message if it is neither known nor reserved yet. The
+     * reservation must be either {@link #commit(Map) committed} once the message is stored or
+     * {@link #release(String) released}.
+     * <p>
+     * The returned future of a transaction reserved by another submission completes once that reservation is
+     * committed or released. Callers that hold reservations themselves must only wait for it after committing or
+     * releasing them, otherwise two submissions sharing transactions could wait for each other.
+     *
+     * @param key       The business identifiers of the transaction.
+     * @param messageId The ID of the message the transaction is going to be stored as.
+     * @return null if the transaction was reserved, otherwise the ID of the message the transaction is stored as,
+     *         or null from the future if its reservation was released without storing it.
+     * @throws UncheckedIOException If the index stopped taking new transactions after a failed write.
+     */
+    public CompletableFuture<String> reserve(String key, String messageId) {
+        if (!enabled) {
+            return null;
+        }
+        Fingerprint fingerprint = Fingerprint.of(key);
+        lock.lock();
+        try {
+            UUID existing = entries.get(fingerprint);
+            if (existing != null) {
+                duplicates.increment();
+                return CompletableFuture.completedFuture(existing.toString());
+            }
+            Reservation reservation = reservations.get(fingerprint);
+            if (reservation != null) {
+                return reservation.stored().thenApply(original -> {
+                    if (original != null) {
+                        duplicates.increment();
+                    }
+                    return original;
+                });
+            }
+            if (writeFailure != null) {
+                throw new UncheckedIOException("Idempotency index stopped taking new transactions after a failed write",
+                        writeFailure);
+            }
+            reservations.put(fingerprint, new Reservation(UUID.fromString(messageId), new CompletableFuture<>()));
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the reservation of a transaction that could not be stored.
+     */
+    public void release(String key) {
+        Reservation reservation;
+        lock.lock();
+        try {
+            reservation = reservations.remove(Fingerprint.of(key));
+        } finally {
+            lock.unlock();
+        }
+        if (reservation != null) {
+            reservation.stored().complete(null);
+        }
+    }
+
+    /**
+     * Persists the reservations of stored transactions with a single write and forces it to disk. Concurrent
+     * submissions of the transactions are answered once the entries are durable. The messages are stored already,
+     * so a failure to write the entries is logged and reported by {@link #health()} rather than thrown.
+     *
+     * @param stored The business identifiers of the stored transactions and the IDs of their messages.
+     */
+    public void commit(Map<String, String> stored) {
+        if (stored.isEmpty()) {
+            return;
+        }
+        List<Reservation> committed = new ArrayList<>(stored.size());
+        lock.lock();
+        try {
+            ByteBuffer buffer = channel == null || writeFailure != null ? null : ByteBuffer.allocate(RECORD_SIZE * stored.size());
+            stored.forEach((key, messageId) -> {
+                Fingerprint fingerprint = Fingerprint.of(key);
+                UUID uuid = UUID.fromString(messageId);
+                Reservation reservation = reservations.remove(fingerprint);
+                if (reservation != null) {
+                    committed.add(reservation);
+                }
+                entries.put(fingerprint, uuid);
+                if (buffer != null) {
+                    buffer.putLong(fingerprint.high()).putLong(fingerprint.low())
+                            .putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+                }
+            });
+            if (buffer != null) {
+                buffer.flip();
+                append(buffer, stored.size());
+            }
+        } finally {
+            lock.unlock();
+            // The messages are stored either way, so waiting submissions are answered even if the write failed.
+            committed.forEach(reservation -> reservation.stored().complete(reservation.messageId().toString()));
+        }
+    }
+
+    /**
+     * Down once the index file could neither be written nor cut back to its last complete record; the file has to be
+     * checked and the service restarted.
+     */
+    @Override
+    public Health health() {
+        lock.lock();
+        try {
+            if (writeFailure != null) {
+                return Health.down(writeFailure).withDetail("writeFailures", (long) writeFailures.count()).build();
+            }
+            return Health.up().withDetail("entries", entries.size()).build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a message accepted under an ID was answered with another, already stored message.
+     *
+     * @param messageId The ID the message was accepted under.
+     * @param original  The ID of the stored message.
+     */
+    public void alias(String messageId, String original) {
+        if (enabled) {
+            commit(Map.of(aliasKey(messageId), original));
+        }
+    }
+
+    /**
+     * Returns the message a message accepted under an ID was answered with, see {@link #alias(String, String)}.
+     *
+     * @return The ID of the stored message, or null if the ID is no alias.
+     */
+    public String resolveAlias(String messageId) {
+        Fingerprint fingerprint = Fingerprint.of(aliasKey(messageId));
+        lock.lock();
+        try {
+            UUID original = entries.get(fingerprint);
+            return original == null ? null : original.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String aliasKey(String messageId) {
+        return "ALIAS:" + messageId;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends records to the index file and forces them to disk. If that fails, the file is cut back to its last
+     * complete record, so the records appended later stay aligned; if even that fails, no more records are written.
+     */
+    private void append(ByteBuffer buffer, int count) {
+        long end = records * RECORD_SIZE;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            records += count;
+        } catch (IOException e) {
+            writeFailures.increment();
+            log.error("Failed to write {} record(s) to idempotency index {}, a retry of their transactions after a "
+                    + "restart is processed as new", count, indexFile, e);
+            try {
+                channel.truncate(end);
+                channel.position(end);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                log.error("Failed to cut idempotency index {} back to {} record(s), it stops taking new transactions",
+                        indexFile, records, truncateFailure);
+                writeFailure = e;
+            }
+            return;
+        }
+        if (records > 2L * maxEntries) {
+            try {
+                rewrite();
+            } catch (IOException e) {
+                writeFailures.increment();
+                log.error("Failed to rewrite idempotency index {}, it stops taking new transactions", indexFile, e);
+                writeFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Replaces the index file by one holding only the current entries.
+     */
+    private void rewrite() throws IOException {
+        Path tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 2048);
+            for (Map.Entry<Fingerprint, UUID> entry : entries.entrySet()) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    write(out, buffer);
+                }
+                buffer.putLong(entry.getKey().high()).putLong(entry.getKey().low())
+                        .putLong(entry.getValue().getMostSignificantBits()).putLong(entry.getValue().getLeastSignificantBits());
+            }
+            write(out, buffer);
+            out.force(false);
+        }
+        channel.close();
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(indexFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("Rewrote idempotency index {} from {} to {} record(s)", indexFile, records, entries.size());
+        records = entries.size();
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * A transaction whose message is being stored.
+     *
+     * @param stored Completes with the message ID once the reservation is committed, or with null if it is released.
+     */
+    private record Reservation(UUID messageId, CompletableFuture<String> stored) {
+    }
+
+    /**
+     * The first 128 bits of the SHA-256 hash of a key.
+     */
+    private record Fingerprint(long high, long low) {
+        static Fingerprint of(String key) {
+            ByteBuffer hash = ByteBuffer.wrap(DigestUtils.sha256(key.getBytes(StandardCharsets.UTF_8)));
+            return new Fingerprint(hash.getLong(), hash.getLong());
+        }
+    }
+}
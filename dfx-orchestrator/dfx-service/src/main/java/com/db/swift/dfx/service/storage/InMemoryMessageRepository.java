@@ -0,0 +1,48 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MessageRepository} that keeps all messages on the heap only ({@code dfx.storage.backend=memory}).
+ * Nothing survives a restart, which makes it the backend of choice for load tests that should not be
+ * bound by disk I/O.
+ */
+@Component
+@ConditionalOnProperty(name = "dfx.storage.backend", havingValue = "memory")
+@Slf4j
+public class InMemoryMessageRepository implements MessageRepository {
+
+    private final Map<String, StoredMessage> messages = new ConcurrentHashMap<>();
+
+    public InMemoryMessageRepository() {
+        log.warn("Using the in-memory message repository, stored messages are lost on shutdown");
+    }
+
+    @Override
+    public void save(StoredMessage message) {
+        messages.put(message.getMessageId(), IndexedMessageStore.copyOf(message));
+    }
+
+    @Override
+    public void delete(String messageId) {
+        messages.remove(messageId);
+    }
+
+    @Override
+    public Optional<StoredMessage> findById(String messageId) {
+        return Optional.ofNullable(messages.get(messageId)).map(IndexedMessageStore::copyOf);
+    }
+
+    @Override
+    public List<StoredMessage> findAll() {
+        return messages.values().stream().map(IndexedMessageStore::copyOf).toList();
+    }
+}
@@ -0,0 +1,36 @@
+package com.db.swift.dfx.service.storage;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PayloadBlobStore} of the in-memory storage backend. Blobs are kept uncompressed on the heap
+ * and are lost on restart.
+ */
+@Component
+@ConditionalOnProperty(name = "dfx.storage.backend", havingValue = "memory")
+public class InMemoryPayloadBlobStore implements PayloadBlobStore {
+
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public String put(byte[] content) {
+        String reference = DigestUtils.sha256Hex(content);
+        blobs.putIfAbsent(reference, content.clone());
+        return reference;
+    }
+
+    @Override
+    public byte[] get(String reference) {
+        PayloadBlobStore.validate(reference);
+        byte[] content = blobs.get(reference);
+        if (content == null) {
+            throw new IllegalArgumentException("Unknown blob reference: " + reference);
+        }
+        return content.clone();
+    }
+}
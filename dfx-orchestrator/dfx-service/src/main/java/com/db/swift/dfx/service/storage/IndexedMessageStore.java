@@ -0,0 +1,318 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.MessageSummary;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resident, indexed view of all stored messages.
+ * <p>
+ * Messages are kept in a hash map keyed by {@code messageId}, so lookups by ID are O(1). Secondary
+ * indexes on transaction status, direction, agent BIC/LEI and currency map each value to the IDs
+ * of the matching messages in timestamp order, so a filtered page only touches the candidate messages from the
+ * cursor on, without sorting them. A timeline index keeps all
+ * messages in timestamp order for time range queries and cursor based paging, a change index keeps them in the
+ * order of their latest change for incremental polling, and the messages still waiting for a pipeline stage are kept
+ * apart with their stage, so they are resumed without walking all messages. The store holds
+ * defensive copies: callers may freely modify the messages they get and put back.
+ * <p>
+ * Next to every message the store keeps its {@link MessageSummary}, built once when the message is put, so
+ * listings of summaries neither copy nor serialize the payloads and audit trails.
+ */
+@Component
+public class IndexedMessageStore {
+
+    private final Map<String, Entry> messages = new ConcurrentHashMap<>();
+    private final NavigableMap<MessageCursor, String> timeline = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, String> changes = new ConcurrentSkipListMap<>();
+    private final Map<String, Integer> pipelineStages = new ConcurrentHashMap<>();
+
+    private final SecondaryIndex statusIndex = new SecondaryIndex(message ->
+            keys(message.getTransactionStatus() == null ? null : message.getTransactionStatus().name()));
+    private final SecondaryIndex directionIndex = new SecondaryIndex(message ->
+            keys(message.getDirection() == null ? null : message.getDirection().name()));
+    private final SecondaryIndex bicIndex = new SecondaryIndex(message ->
+            keys(message.getDebitorAgentBIC(), message.getCreditorAgentBIC()));
+    private final SecondaryIndex leiIndex = new SecondaryIndex(message ->
+            keys(message.getDebitorAgentLEI(), message.getCreditorAgentLEI()));
+    private final SecondaryIndex ccyIndex = new SecondaryIndex(message ->
+            keys(message.getCcy(), message.getTargetCcy()));
+    private final List<SecondaryIndex> secondaryIndexes = List.of(statusIndex, directionIndex, bicIndex, leiIndex, ccyIndex);
+
+    /**
+     * Inserts or replaces a message and updates all secondary indexes atomically for its ID.
+     */
+    public void put(StoredMessage message) {
+        StoredMessage copy = copyOf(message);
+        Entry entry = new Entry(copy, MessageSummaries.of(copy));
+        messages.compute(copy.getMessageId(), (id, previousEntry) -> {
+            StoredMessage previous = previousEntry == null ? null : previousEntry.message();
+            for (SecondaryIndex index : secondaryIndexes) {
+                index.replace(id, previous, copy);
+            }
+            if (previous != null) {
+                timeline.remove(MessageCursor.of(previous));
+                if (previous.getChangeSeq() != null) {
+                    changes.remove(previous.getChangeSeq());
+                }
+            }
+            timeline.put(MessageCursor.of(copy), id);
+            if (copy.getChangeSeq() != null) {
+                changes.put(copy.getChangeSeq(), id);
+            }
+            if (copy.getPipelineStage() != null) {
+                pipelineStages.put(id, copy.getPipelineStage());
+            } else {
+                pipelineStages.remove(id);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Removes a message and its entries in all secondary indexes.
+     */
+    public void remove(String messageId) {
+        messages.computeIfPresent(messageId, (id, previousEntry) -> {
+            StoredMessage previous = previousEntry.message();
+            for (SecondaryIndex index : secondaryIndexes) {
+                index.replace(id, previous, null);
+            }
+            timeline.remove(MessageCursor.of(previous));
+            if (previous.getChangeSeq() != null) {
+                changes.remove(previous.getChangeSeq());
+            }
+            pipelineStages.remove(id);
+            return null;
+        });
+    }
+
+    public Optional<StoredMessage> get(String messageId) {
+        return Optional.ofNullable(messages.get(messageId)).map(entry -> copyOf(entry.message()));
+    }
+
+    public boolean contains(String messageId) {
+        return messages.containsKey(messageId);
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Returns the IDs of the messages waiting for a pipeline stage, with the position of that stage.
+     */
+    public Map<String, Integer> findPipelineStages() {
+        return Map.copyOf(pipelineStages);
+    }
+
+    /**
+     * Returns all messages matching the query, ordered by their timestamp.
+     */
+    public List<StoredMessage> find(MessageQuery query) {
+        return find(query, null, Integer.MAX_VALUE).messages();
+    }
+
+    /**
+     * Returns a page of the messages matching the query, ordered by their timestamp.
+     * <p>
+     * If one of the attribute criteria is set, the candidates of the most selective secondary index are walked,
+     * otherwise the timeline index. Either way the walk starts at the start of the time range or the cursor,
+     * whichever comes later, and stops once the page is full; the remaining criteria are checked on the way.
+     *
+     * @param query The filter criteria.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of messages to return.
+     */
+    public MessagePage<StoredMessage> find(MessageQuery query, MessageCursor after, int limit) {
+        return find(query, after, limit, entry -> copyOf(entry.message()));
+    }
+
+    /**
+     * Returns a page of the summaries of the messages matching the query, ordered by their timestamp.
+     * The summaries are shared and must not be modified.
+     *
+     * @see #find(MessageQuery, MessageCursor, int)
+     */
+    public MessagePage<MessageSummary> findSummaries(MessageQuery query, MessageCursor after, int limit) {
+        return find(query, after, limit, Entry::summary);
+    }
+
+    private <T> MessagePage<T> find(MessageQuery query, MessageCursor after, int limit, Function<Entry, T> projection) {
+        Posting candidates = null;
+        candidates = narrow(candidates, statusIndex, query.getTransactionStatus() == null ? null : query.getTransactionStatus().name());
+        candidates = narrow(candidates, directionIndex, query.getDirection() == null ? null : query.getDirection().name());
+        candidates = narrow(candidates, bicIndex, query.getBic());
+        candidates = narrow(candidates, leiIndex, query.getLei());
+        candidates = narrow(candidates, ccyIndex, query.getCcy());
+
+        NavigableMap<MessageCursor, String> range = candidates == null ? timeline : candidates.ids();
+        MessageCursor lowerBound = query.getFrom() == null ? null : new MessageCursor(query.getFrom().toInstant(), "");
+        if (after != null && (lowerBound == null || after.compareTo(lowerBound) >= 0)) {
+            range = range.tailMap(after, false);
+        } else if (lowerBound != null) {
+            range = range.tailMap(lowerBound, true);
+        }
+        if (query.getTo() != null) {
+            range = range.headMap(new MessageCursor(query.getTo().toInstant(), ""), false);
+        }
+        Stream<Entry> matches = range.values().stream()
+                .map(messages::get)
+                .filter(Objects::nonNull)
+                .filter(entry -> matches(entry.message(), query));
+
+        // One more message than requested tells whether there is a next page.
+        List<Entry> page = matches.limit(limit == Integer.MAX_VALUE ? limit : limit + 1L)
+                .collect(Collectors.toCollection(ArrayList::new));
+        MessageCursor nextCursor = null;
+        if (page.size() > limit) {
+            page.remove(page.size() - 1);
+            nextCursor = MessageCursor.of(page.get(page.size() - 1).message());
+        }
+        return new MessagePage<>(page.stream().map(projection).toList(), nextCursor);
+    }
+
+    /**
+     * Returns the messages whose latest change lies in the given range of the change sequence, ordered by it.
+     *
+     * @param since Exclusive lower bound of the range.
+     * @param upTo  Inclusive upper bound of the range.
+     * @param limit The maximum number of messages to return.
+     */
+    public List<StoredMessage> findChanges(long since, long upTo, int limit) {
+        if (upTo <= since) {
+            return List.of();
+        }
+        return changes.subMap(since, false, upTo, true).values().stream()
+                .map(messages::get)
+                .filter(Objects::nonNull)
+                .map(Entry::message)
+                // A message changed again in the meantime is reported once its new position is visible.
+                .filter(message -> message.getChangeSeq() != null && message.getChangeSeq() <= upTo)
+                .limit(limit)
+                .map(IndexedMessageStore::copyOf)
+                .toList();
+    }
+
+    private static Posting narrow(Posting candidates, SecondaryIndex index, String key) {
+        if (key == null) {
+            return candidates;
+        }
+        Posting posting = index.get(key);
+        return candidates == null || posting.size() < candidates.size() ? posting : candidates;
+    }
+
+    private static boolean matches(StoredMessage message, MessageQuery query) {
+        return (query.getTransactionStatus() == null || query.getTransactionStatus() == message.getTransactionStatus())
+                && (query.getDirection() == null || query.getDirection() == message.getDirection())
+                && (query.getBic() == null || query.getBic().equals(message.getDebitorAgentBIC()) || query.getBic().equals(message.getCreditorAgentBIC()))
+                && (query.getLei() == null || query.getLei().equals(message.getDebitorAgentLEI()) || query.getLei().equals(message.getCreditorAgentLEI()))
+                && (query.getCcy() == null || query.getCcy().equals(message.getCcy()) || query.getCcy().equals(message.getTargetCcy()))
+                && (query.getFrom() == null || message.getTimestamp() != null && !message.getTimestamp().isBefore(query.getFrom()))
+                && (query.getTo() == null || message.getTimestamp() != null && message.getTimestamp().isBefore(query.getTo()));
+    }
+
+    /**
+     * Creates a copy that does not share the mutable audit trail with the original.
+     */
+    static StoredMessage copyOf(StoredMessage message) {
+        StoredMessage copy = message.toBuilder().build();
+        copy.setAuditTrail(message.getAuditTrail() == null ? null : new ArrayList<>(message.getAuditTrail()));
+        return copy;
+    }
+
+    private static Set<String> keys(String... values) {
+        return Stream.of(values).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    /**
+     * A stored message together with its precomputed summary.
+     */
+    private record Entry(StoredMessage message, MessageSummary summary) {
+    }
+
+    /**
+     * Maps an attribute value to the IDs of all messages carrying it, ordered by the position of the messages in
+     * the timeline.
+     */
+    private static final class SecondaryIndex {
+        private static final Posting EMPTY = new Posting();
+
+        private final Function<StoredMessage, Set<String>> keyExtractor;
+        private final Map<String, Posting> entries = new ConcurrentHashMap<>();
+
+        private SecondaryIndex(Function<StoredMessage, Set<String>> keyExtractor) {
+            this.keyExtractor = keyExtractor;
+        }
+
+        Posting get(String key) {
+            return entries.getOrDefault(key, EMPTY);
+        }
+
+        void replace(String messageId, StoredMessage previous, StoredMessage current) {
+            Set<String> previousKeys = previous == null ? Set.of() : keyExtractor.apply(previous);
+            Set<String> currentKeys = current == null ? Set.of() : keyExtractor.apply(current);
+            MessageCursor previousCursor = previous == null ? null : MessageCursor.of(previous);
+            MessageCursor currentCursor = current == null ? null : MessageCursor.of(current);
+            for (String key : previousKeys) {
+                if (!currentKeys.contains(key) || !previousCursor.equals(currentCursor)) {
+                    entries.computeIfPresent(key, (k, posting) -> posting.remove(previousCursor) ? null : posting);
+                }
+            }
+            for (String key : currentKeys) {
+                entries.compute(key, (k, posting) -> {
+                    Posting updated = posting == null ? new Posting() : posting;
+                    updated.add(currentCursor, messageId);
+                    return updated;
+                });
+            }
+        }
+    }
+
+    /**
+     * The IDs of the messages carrying one attribute value in timeline order, with their count; the size of a
+     * skip list map is not known without walking it.
+     */
+    private static final class Posting {
+        private final NavigableMap<MessageCursor, String> ids = new ConcurrentSkipListMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        NavigableMap<MessageCursor, String> ids() {
+            return ids;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        void add(MessageCursor cursor, String messageId) {
+            if (ids.put(cursor, messageId) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return true if the posting is empty afterwards.
+         */
+        boolean remove(MessageCursor cursor) {
+            if (ids.remove(cursor) != null) {
+                return size.decrementAndGet() == 0;
+            }
+            return size.get() == 0;
+        }
+    }
+}
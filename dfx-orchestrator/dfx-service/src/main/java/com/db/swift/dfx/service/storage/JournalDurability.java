@@ -0,0 +1,21 @@
+package com.db.swift.dfx.service.storage;
+
+/**
+ * Durability guarantee of a write to the {@link MessageJournal}.
+ */
+public enum JournalDurability {
+    /**
+     * Every write is flushed to disk (fsync) on the calling thread before it returns.
+     */
+    SYNC,
+    /**
+     * Writes of all threads are collected for a short window and committed with a single write and
+     * a single fsync. Callers wait until their batch is durable.
+     */
+    GROUP,
+    /**
+     * Writes are batched like {@link #GROUP}, but callers do not wait and batches are not flushed to
+     * disk explicitly. The most recent writes may be lost if the machine crashes.
+     */
+    ASYNC
+}
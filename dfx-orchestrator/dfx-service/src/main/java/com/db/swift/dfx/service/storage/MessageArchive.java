@@ -0,0 +1,318 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier for messages that reached a terminal state and are no longer part of the working set.
+ * <p>
+ * Messages are written to immutable archive segments, partitioned by the day the message was received
+ * ({@code archive/<yyyy-MM-dd>/archive-<n>.ndjson.gz}). Every record is a gzip member of its own, so a single
+ * message can be read by seeking to its offset and inflating only that record. A small sidecar file per segment
+ * lists the offsets; on startup only these index files are read to rebuild the in-memory ID index.
+ */
+@Component
+@Slf4j
+public class MessageArchive {
+
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final ObjectMapper objectMapper;
+    private final Path archiveDirectory;
+    // Not a monitor: archive writes segments while holding it, which would pin a virtual thread.
+    private final Lock writeLock = new ReentrantLock();
+
+    private final Map<String, ArchiveLocation> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong segmentSequence = new AtomicLong();
+    private final AtomicLong maxChangeSeq = new AtomicLong();
+
+    public MessageArchive(ObjectMapper objectMapper, @Value("${dfx.storage.path:/tmp/dfx-messages}") String storagePath) {
+        // Null fields are omitted to keep the records compact.
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.archiveDirectory = Paths.get(storagePath, ARCHIVE_DIRECTORY);
+    }
+
+    /**
+     * Loads the index files of all archive segments. Segments are read in the order they were written,
+     * so a message archived more than once points to its latest copy.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!Files.isDirectory(archiveDirectory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(archiveDirectory, 2)) {
+            files = paths.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)).toList();
+        }
+        Map<Long, Path> indexFilesBySequence = new TreeMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(INDEX_SUFFIX)) {
+                indexFilesBySequence.put(parseSequence(name, INDEX_SUFFIX), file);
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                // Segments left without index by a crash are ignored, but their sequence number must not be reused.
+                segmentSequence.accumulateAndGet(parseSequence(name, SEGMENT_SUFFIX), Math::max);
+            }
+        }
+        for (Map.Entry<Long, Path> entry : indexFilesBySequence.entrySet()) {
+            segments.put(entry.getKey(), loadIndex(entry.getValue()));
+        }
+        log.info("Opened message archive in {} with {} segment(s) and {} message(s)", archiveDirectory, indexFilesBySequence.size(), index.size());
+    }
+
+    /**
+     * Writes the messages to new archive segments, one per day. When this method returns the segments and their
+     * index files are on disk, so the messages can safely be removed from the working set.
+     *
+     * @param messages The messages to archive.
+     */
+    public void archive(Collection<StoredMessage> messages) {
+        writeLock.lock();
+        try {
+            Map<LocalDate, List<StoredMessage>> messagesByDay = messages.stream()
+                    .collect(Collectors.groupingBy(MessageArchive::partitionOf, TreeMap::new, Collectors.toList()));
+            for (Map.Entry<LocalDate, List<StoredMessage>> partition : messagesByDay.entrySet()) {
+                try {
+                    writeSegment(partition.getKey(), partition.getValue());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to archive messages of " + partition.getKey(), e);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Reads an archived message.
+     *
+     * @param messageId The ID of the message to read.
+     * @return An Optional containing the message, or empty if it is not archived.
+     */
+    public Optional<StoredMessage> findById(String messageId) {
+        ArchiveLocation location = index.get(messageId);
+        if (location == null) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(location.segment(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length());
+            long position = location.offset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of archive segment " + location.segment());
+                }
+                position += read;
+            }
+            try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(buffer.array()))) {
+                return Optional.of(objectMapper.readValue(inputStream, StoredMessage.class));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archived message " + messageId, e);
+        }
+    }
+
+    /**
+     * Returns the sequence numbers of all archive segments in the order they were written.
+     */
+    public NavigableSet<Long> segmentSequences() {
+        return Collections.unmodifiableNavigableSet(segments.navigableKeySet());
+    }
+
+    /**
+     * Reads all records of an archive segment in the order they were written. The stream holds the segment open
+     * and has to be closed. A record may have been superseded by a later archive segment, see {@link #isCurrent}.
+     *
+     * @param sequence The sequence number of the segment, see {@link #segmentSequences()}.
+     */
+    public Stream<StoredMessage> readSegment(long sequence) {
+        Path segment = segments.get(sequence);
+        if (segment == null) {
+            return Stream.empty();
+        }
+        try {
+            // Concatenated gzip members decompress to the concatenation of their records.
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(segment)), StandardCharsets.UTF_8));
+            return reader.lines()
+                    .map(this::deserialize)
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            log.warn("Failed to close archive segment {}", segment, e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive segment " + segment, e);
+        }
+    }
+
+    /**
+     * Checks whether the given segment holds the latest archived copy of a message.
+     */
+    public boolean isCurrent(long sequence, String messageId) {
+        ArchiveLocation location = index.get(messageId);
+        return location != null && location.segment().equals(segments.get(sequence));
+    }
+
+    /**
+     * Returns the highest change sequence position of all archived messages, so positions are not reused
+     * after the messages that used them left the working set.
+     */
+    public long getMaxChangeSeq() {
+        return maxChangeSeq.get();
+    }
+
+    public boolean contains(String messageId) {
+        return index.containsKey(messageId);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private void writeSegment(LocalDate day, List<StoredMessage> messages) throws IOException {
+        Path partitionDirectory = archiveDirectory.resolve(day.toString());
+        Files.createDirectories(partitionDirectory);
+        long sequence = segmentSequence.incrementAndGet();
+        String segmentName = String.format("%s%010d", SEGMENT_PREFIX, sequence);
+        Path segment = partitionDirectory.resolve(segmentName + SEGMENT_SUFFIX);
+        Map<String, ArchiveLocation> locations = new TreeMap<>();
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            for (StoredMessage message : messages) {
+                ByteBuffer record = ByteBuffer.wrap(compress(message));
+                int length = record.remaining();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                locations.put(message.getMessageId(), new ArchiveLocation(segment, offset, length, changeSeqOf(message)));
+                offset += length;
+            }
+            channel.force(false);
+        }
+
+        // The index file is moved into place last: a segment without index is ignored on startup.
+        Path indexFile = partitionDirectory.resolve(segmentName + INDEX_SUFFIX);
+        Path tempFile = Files.createTempFile(partitionDirectory, segmentName, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, ArchiveLocation> entry : locations.entrySet()) {
+                ArchiveLocation location = entry.getValue();
+                writer.write(entry.getKey() + " " + location.offset() + " " + location.length() + " " + location.changeSeq() + "\n");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+
+        index.putAll(locations);
+        locations.values().forEach(location -> maxChangeSeq.accumulateAndGet(location.changeSeq(), Math::max));
+        segments.put(sequence, segment);
+        log.info("Archived {} message(s) to {}", messages.size(), segment);
+    }
+
+    private Path loadIndex(Path indexFile) throws IOException {
+        String fileName = indexFile.getFileName().toString();
+        Path segment = indexFile.resolveSibling(fileName.substring(0, fileName.length() - INDEX_SUFFIX.length()) + SEGMENT_SUFFIX);
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length >= 3) {
+                    long changeSeq = fields.length > 3 ? Long.parseLong(fields[3]) : 0;
+                    index.put(fields[0], new ArchiveLocation(segment, Long.parseLong(fields[1]), Integer.parseInt(fields[2]), changeSeq));
+                    maxChangeSeq.accumulateAndGet(changeSeq, Math::max);
+                }
+            }
+        }
+        return segment;
+    }
+
+    private StoredMessage deserialize(String record) {
+        try {
+            return objectMapper.readValue(record, StoredMessage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archived record", e);
+        }
+    }
+
+    private byte[] compress(StoredMessage message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new GZIPOutputStream(buffer)) {
+            outputStream.write(objectMapper.writeValueAsBytes(message));
+            outputStream.write('\n');
+        }
+        return buffer.toByteArray();
+    }
+
+    private static long changeSeqOf(StoredMessage message) {
+        return message.getChangeSeq() == null ? 0 : message.getChangeSeq();
+    }
+
+    private static LocalDate partitionOf(StoredMessage message) {
+        return message.getTimestamp() == null
+                ? LocalDate.now(ZoneOffset.UTC)
+                : message.getTimestamp().atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static long parseSequence(String fileName, String suffix) {
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - suffix.length()));
+    }
+
+    /**
+     * Position of a single gzip compressed record inside an archive segment, along with the change sequence
+     * position of the archived state.
+     */
+    private record ArchiveLocation(Path segment, long offset, int length, long changeSeq) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Position of a message in the timestamp order of the {@link IndexedMessageStore}. A cursor points to the last
+ * message of a page; the next page starts right after it. Messages without a timestamp sort first.
+ *
+ * @param timestamp The timestamp of the message, {@link Instant#MIN} if it has none.
+ * @param messageId The ID of the message, breaking ties between messages with the same timestamp.
+ */
+public record MessageCursor(Instant timestamp, String messageId) implements Comparable<MessageCursor> {
+
+    private static final Comparator<MessageCursor> ORDER = Comparator
+            .comparing(MessageCursor::timestamp)
+            .thenComparing(MessageCursor::messageId);
+    private static final char SEPARATOR = '|';
+
+    public static MessageCursor of(StoredMessage message) {
+        Instant timestamp = message.getTimestamp() == null ? Instant.MIN : message.getTimestamp().toInstant();
+        return new MessageCursor(timestamp, message.getMessageId());
+    }
+
+    /**
+     * Decodes a cursor created by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the value is not a valid cursor.
+     */
+    public static MessageCursor decode(String value) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + value);
+            }
+            return new MessageCursor(Instant.parse(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    /**
+     * Encodes the cursor into an opaque, URL safe string.
+     */
+    public String encode() {
+        String value = timestamp.toString() + SEPARATOR + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int compareTo(MessageCursor other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,765 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Segmented, append-only journal for {@link StoredMessage} records.
+ * <p>
+ * Every store or update appends exactly one newline-delimited JSON record to the active segment,
+ * so the cost of a write does not depend on the number of messages already stored. The latest
+ * record of a message wins; an in-memory offset index points to it and is rebuilt from the
+ * segments on startup. Deleting a message appends a tombstone record. Segments are rolled once they reach the configured size and sealed
+ * segments with mostly superseded records are compacted in the background.
+ * <p>
+ * How writes reach the disk is controlled by the configured {@link JournalDurability}. In the default
+ * group commit mode, a dedicated writer thread collects the pending records of all pipeline threads and
+ * commits them with one write and one fsync. Once a commit failed, the state of the file on disk is unknown: the
+ * journal stops accepting writes and reports itself as down, also in the asynchronous mode where no caller waits
+ * for the failed commit.
+ * <p>
+ * This is the default {@link MessageRepository} backend ({@code dfx.storage.backend=journal}).
+ */
+@Component
+@ConditionalOnProperty(name = "dfx.storage.backend", havingValue = "journal", matchIfMissing = true)
+@Slf4j
+public class MessageJournal implements MessageRepository, HealthIndicator {
+
+    private static final String JOURNAL_DIRECTORY = "journal";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
+    private static final String LEGACY_FILE_NAME = "messages.json";
+    private static final byte RECORD_SEPARATOR = '\n';
+    private static final String TOMBSTONE_FIELD = "tombstone";
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${dfx.storage.path:/tmp/dfx-messages}")
+    private String storagePath;
+
+    @Value("${dfx.storage.journal.segment-size:67108864}")
+    private long maxSegmentSize;
+
+    @Value("${dfx.storage.journal.compaction-threshold:0.5}")
+    private double compactionThreshold;
+
+    @Value("${dfx.storage.journal.durability:GROUP}")
+    private JournalDurability durability;
+
+    @Value("${dfx.storage.journal.group-commit.window:PT0.002S}")
+    private Duration groupCommitWindow;
+
+    @Value("${dfx.storage.journal.group-commit.max-batch-size:256}")
+    private int maxBatchSize;
+
+    private final ObjectMapper objectMapper;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer commitTimer;
+    private final Counter commitFailures;
+
+    private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile IOException commitFailure;
+    private Thread writerThread;
+
+    private final Map<String, RecordLocation> offsetIndex = new ConcurrentHashMap<>();
+    /**
+     * Latest tombstone of every deleted message. Tombstones have to survive compaction as long as older
+     * segments may still contain records of the deleted message.
+     */
+    private final Map<String, RecordLocation> tombstoneIndex = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Lock appendLock = new ReentrantLock();
+    private volatile Segment activeSegment;
+
+    public MessageJournal(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        // Null fields are omitted to keep the records compact.
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.batchSizeSummary = DistributionSummary.builder("dfx.storage.journal.batch.size")
+                .description("Number of records committed with a single write")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("dfx.storage.journal.commit.latency")
+                .description("Time to write and flush a batch of records")
+                .register(meterRegistry);
+        this.commitFailures = Counter.builder("dfx.storage.journal.commit.failures")
+                .description("Batches of records that failed to be written or flushed")
+                .register(meterRegistry);
+        Gauge.builder("dfx.storage.journal.pending.writes", pendingWrites, BlockingQueue::size)
+                .description("Records waiting for the next group commit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens all existing segments and rebuilds the offset index. A legacy {@code messages.json}
+     * file is imported once if the journal is still empty.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path journalDirectory = getJournalDirectory();
+        Files.createDirectories(journalDirectory);
+
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            for (Path file : files.filter(MessageJournal::isSegmentFile).sorted().toList()) {
+                Segment segment = Segment.open(file, parseSegmentId(file));
+                segments.put(segment.id, segment);
+                rebuildIndex(segment);
+            }
+        }
+
+        boolean empty = segments.isEmpty();
+        activeSegment = empty ? createSegment(1) : segments.lastEntry().getValue();
+
+        if (durability != JournalDurability.SYNC) {
+            running = true;
+            writerThread = new Thread(this::runGroupCommitWriter, "message-journal-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+
+        if (empty) {
+            migrateLegacyFile();
+        }
+        log.info("Opened message journal in {} with {} segment(s) and {} message(s), durability {}",
+                journalDirectory, segments.size(), offsetIndex.size(), durability);
+    }
+
+    /**
+     * Commits all pending writes and closes the segments. Writes submitted afterwards fail.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        running = false;
+        if (writerThread != null) {
+            writerThread.join();
+        }
+        // Writes queued while the writer thread was stopping are failed, not left waiting forever.
+        PendingWrite write;
+        while ((write = pendingWrites.poll()) != null) {
+            write.completion().completeExceptionally(closedException());
+        }
+        appendLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.error("Failed to flush message journal on shutdown", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the current state of a message as a new record and points the index to it.
+     * Depending on the durability mode this method returns once the record is on disk
+     * or as soon as it is queued.
+     *
+     * @param message The message to persist.
+     */
+    @Override
+    public void save(StoredMessage message) {
+        submit(List.of(new PendingWrite(message.getMessageId(), serialize(message), false, new CompletableFuture<>())));
+    }
+
+    /**
+     * Appends the records of all messages with the same durability as {@link #save(StoredMessage)}. In the group
+     * commit modes the records are queued together and usually committed with a single write.
+     *
+     * @param messages The messages to persist.
+     */
+    @Override
+    public void saveAll(Collection<StoredMessage> messages) {
+        submit(messages.stream()
+                .map(message -> new PendingWrite(message.getMessageId(), serialize(message), false, new CompletableFuture<>()))
+                .toList());
+    }
+
+    /**
+     * Appends a tombstone record for a message and removes it from the index. Its earlier records become
+     * garbage and are dropped by the next compaction of their segments.
+     *
+     * @param messageId The ID of the message to delete.
+     */
+    @Override
+    public void delete(String messageId) {
+        submit(List.of(new PendingWrite(messageId, tombstone(messageId), true, new CompletableFuture<>())));
+    }
+
+    private void submit(List<PendingWrite> writes) {
+        if (closed) {
+            throw closedException();
+        }
+        if (commitFailure != null) {
+            throw failedException();
+        }
+        if (durability == JournalDurability.SYNC) {
+            commit(writes);
+        } else {
+            pendingWrites.addAll(writes);
+            // If the journal was closed meanwhile, the writes are either still queued or taken by the writer or close.
+            if (closed && pendingWrites.removeAll(writes)) {
+                throw closedException();
+            }
+        }
+        if (durability == JournalDurability.ASYNC) {
+            return;
+        }
+        for (PendingWrite write : writes) {
+            try {
+                write.completion().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IllegalStateException closedException) {
+                    throw closedException;
+                }
+                throw new UncheckedIOException("Failed to append record of message " + write.messageId() + " to journal",
+                        e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause()));
+            }
+        }
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("Message journal is closed");
+    }
+
+    private UncheckedIOException failedException() {
+        return new UncheckedIOException("Message journal stopped accepting writes after a failed commit", commitFailure);
+    }
+
+    /**
+     * Down once a commit failed; the journal has to be checked and the service restarted.
+     */
+    @Override
+    public Health health() {
+        IOException failure = commitFailure;
+        if (failure != null) {
+            return Health.down(failure).withDetail("commitFailures", (long) commitFailures.count()).build();
+        }
+        return Health.up()
+                .withDetail("durability", durability)
+                .withDetail("messages", offsetIndex.size())
+                .withDetail("segments", segments.size())
+                .build();
+    }
+
+    /**
+     * Reads the latest record of a message.
+     *
+     * @param messageId The ID of the message to read.
+     * @return An Optional containing the message, or empty if the journal does not contain it.
+     */
+    @Override
+    public Optional<StoredMessage> findById(String messageId) {
+        // A concurrent compaction may move the record while we read it, so retry once with the new location.
+        for (int attempt = 0; attempt < 2; attempt++) {
+            RecordLocation location = offsetIndex.get(messageId);
+            if (location == null) {
+                return Optional.empty();
+            }
+            Segment segment = segments.get(location.segmentId());
+            if (segment == null) {
+                continue;
+            }
+            try {
+                return Optional.of(deserialize(segment.read(location)));
+            } catch (ClosedChannelException e) {
+                log.debug("Segment {} was compacted while reading message {}, retrying", location.segmentId(), messageId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read message " + messageId + " from journal", e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads the latest record of every message in the journal.
+     */
+    @Override
+    public List<StoredMessage> findAll() {
+        List<StoredMessage> messages = new ArrayList<>(offsetIndex.size());
+        for (String messageId : offsetIndex.keySet()) {
+            findById(messageId).ifPresent(messages::add);
+        }
+        return messages;
+    }
+
+    public boolean contains(String messageId) {
+        return offsetIndex.containsKey(messageId);
+    }
+
+    public int size() {
+        return offsetIndex.size();
+    }
+
+    /**
+     * Rewrites the live records of sealed segments whose share of live records dropped below the
+     * compaction threshold into the active segment and deletes the old segment afterwards.
+     * Records that are superseded while being copied are simply left behind as garbage.
+     * Tombstones are copied as well, unless the segment is the oldest one and no older record
+     * of the deleted message can exist anymore.
+     */
+    @Scheduled(fixedDelayString = "${dfx.storage.journal.compaction-interval:PT5M}",
+            initialDelayString = "${dfx.storage.journal.compaction-interval:PT5M}")
+    public void compact() {
+        if (commitFailure != null) {
+            return;
+        }
+        Map<Long, List<Map.Entry<String, RecordLocation>>> liveRecords = groupBySegment(offsetIndex);
+        Map<Long, List<Map.Entry<String, RecordLocation>>> liveTombstones = groupBySegment(tombstoneIndex);
+
+        for (Segment segment : segments.values()) {
+            if (segment == activeSegment) {
+                continue;
+            }
+            List<Map.Entry<String, RecordLocation>> live = liveRecords.getOrDefault(segment.id, List.of());
+            List<Map.Entry<String, RecordLocation>> tombstones = liveTombstones.getOrDefault(segment.id, List.of());
+            long liveBytes = Stream.concat(live.stream(), tombstones.stream()).mapToLong(entry -> entry.getValue().length()).sum();
+            if (liveBytes >= segment.size() * compactionThreshold) {
+                continue;
+            }
+            try {
+                compactSegment(segment, live, tombstones);
+            } catch (IOException e) {
+                log.error("Failed to compact journal segment {}", segment.path, e);
+            }
+        }
+    }
+
+    private void compactSegment(Segment segment, List<Map.Entry<String, RecordLocation>> live,
+                                List<Map.Entry<String, RecordLocation>> tombstones) throws IOException {
+        log.info("Compacting journal segment {} with {} live record(s) and {} tombstone(s)", segment.path, live.size(), tombstones.size());
+        copyLiveRecords(segment, live, offsetIndex);
+        if (segment.id == segments.firstKey()) {
+            tombstones.forEach(entry -> tombstoneIndex.remove(entry.getKey(), entry.getValue()));
+        } else {
+            copyLiveRecords(segment, tombstones, tombstoneIndex);
+        }
+        // The copies have to be durable before the only other copy is deleted.
+        for (Segment newerSegment : segments.tailMap(segment.id, false).values()) {
+            newerSegment.force();
+        }
+        segments.remove(segment.id);
+        segment.close();
+        Files.deleteIfExists(segment.path);
+    }
+
+    /**
+     * Copies records to the active segment unless they were superseded in the meantime.
+     */
+    private void copyLiveRecords(Segment segment, List<Map.Entry<String, RecordLocation>> records,
+                                 Map<String, RecordLocation> index) throws IOException {
+        for (Map.Entry<String, RecordLocation> entry : records) {
+            byte[] record = segment.read(entry.getValue());
+            appendLock.lock();
+            try {
+                if (entry.getValue().equals(index.get(entry.getKey()))) {
+                    index.put(entry.getKey(), write(record));
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        }
+    }
+
+    private static Map<Long, List<Map.Entry<String, RecordLocation>>> groupBySegment(Map<String, RecordLocation> index) {
+        Map<Long, List<Map.Entry<String, RecordLocation>>> bySegment = new HashMap<>();
+        for (Map.Entry<String, RecordLocation> entry : index.entrySet()) {
+            bySegment.computeIfAbsent(entry.getValue().segmentId(), id -> new ArrayList<>()).add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return bySegment;
+    }
+
+    /**
+     * Collects pending writes into batches and commits them. A batch is closed once it reaches the
+     * maximum batch size or the group commit window since its first record has elapsed.
+     */
+    private void runGroupCommitWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pendingWrites.isEmpty()) {
+            try {
+                PendingWrite first = pendingWrites.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + groupCommitWindow.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? pendingWrites.poll(remaining, TimeUnit.NANOSECONDS) : pendingWrites.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(write -> write.completion().completeExceptionally(e));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of records with a single write to the active segment, flushes it according to the
+     * durability mode and points the index to the new records.
+     */
+    private void commit(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        appendLock.lock();
+        try {
+            if (commitFailure != null) {
+                throw commitFailure;
+            }
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            long batchLength = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                buffers[i] = ByteBuffer.wrap(batch.get(i).record());
+                batchLength += batch.get(i).record().length;
+            }
+            rollIfFull(batchLength);
+
+            long offset = activeSegment.append(buffers);
+            if (durability != JournalDurability.ASYNC) {
+                activeSegment.force();
+            }
+            for (PendingWrite write : batch) {
+                index(write.messageId(), new RecordLocation(activeSegment.id, offset, write.record().length), write.tombstone());
+                offset += write.record().length;
+            }
+        } catch (IOException e) {
+            commitFailures.increment();
+            if (commitFailure == null) {
+                log.error("Failed to commit {} record(s) to the message journal, no further writes are accepted", batch.size(), e);
+                commitFailure = e;
+            }
+            batch.forEach(write -> write.completion().completeExceptionally(e));
+            return;
+        } finally {
+            appendLock.unlock();
+        }
+        batch.forEach(write -> write.completion().complete(null));
+        batchSizeSummary.record(batch.size());
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Rolls to a new segment if the given number of bytes does not fit into the active segment.
+     * This method assumes the append lock is held by the caller.
+     */
+    private void rollIfFull(long length) throws IOException {
+        if (activeSegment.size() > 0 && activeSegment.size() + length > maxSegmentSize) {
+            Segment previousSegment = activeSegment;
+            activeSegment = createSegment(previousSegment.id + 1);
+            previousSegment.force();
+            log.info("Rolled message journal to new segment {}", activeSegment.path);
+        }
+    }
+
+    /**
+     * Writes a record to the active segment, rolling to a new segment if the record does not fit.
+     * This method assumes the append lock is held by the caller.
+     */
+    private RecordLocation write(byte[] record) throws IOException {
+        rollIfFull(record.length);
+        long offset = activeSegment.append(new ByteBuffer[]{ByteBuffer.wrap(record)});
+        return new RecordLocation(activeSegment.id, offset, record.length);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = Segment.open(getJournalDirectory().resolve(segmentFileName(id)), id);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Scans a segment record by record and points the index to the latest record of every message.
+     * A torn record at the end of the segment (e.g. after a crash during a write) is truncated.
+     */
+    private void rebuildIndex(Segment segment) throws IOException {
+        // The buffer holds the bytes from the start of the current record on; it grows for records longer than it.
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int filled = 0;
+        long recordStart = 0;
+
+        while (true) {
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = segment.channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled), recordStart + filled);
+            if (read <= 0) {
+                break;
+            }
+            int start = 0;
+            for (int i = filled; i < filled + read; i++) {
+                if (buffer[i] != RECORD_SEPARATOR) {
+                    continue;
+                }
+                int length = i + 1 - start;
+                RecordHeader header = readHeader(buffer, start, length - 1);
+                if (header != null) {
+                    index(header.messageId(), new RecordLocation(segment.id, recordStart, length), header.tombstone());
+                }
+                recordStart += length;
+                start = i + 1;
+            }
+            filled += read - start;
+            System.arraycopy(buffer, start, buffer, 0, filled);
+        }
+
+        if (filled > 0) {
+            log.warn("Truncating torn record at offset {} in journal segment {}", recordStart, segment.path);
+            segment.channel.truncate(recordStart);
+        }
+        segment.size.set(recordStart);
+    }
+
+    /**
+     * Points the index to the latest record of a message, or moves the message to the tombstone index
+     * if the record is a tombstone.
+     */
+    private void index(String messageId, RecordLocation location, boolean tombstone) {
+        if (tombstone) {
+            offsetIndex.remove(messageId);
+            tombstoneIndex.put(messageId, location);
+        } else {
+            tombstoneIndex.remove(messageId);
+            offsetIndex.put(messageId, location);
+        }
+    }
+
+    /**
+     * Extracts the top-level {@code messageId} of a record and whether it is a tombstone without
+     * binding the whole message. Tombstones carry their marker before the {@code messageId}.
+     */
+    private RecordHeader readHeader(byte[] buffer, int offset, int length) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(buffer, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            boolean tombstone = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (TOMBSTONE_FIELD.equals(field)) {
+                    tombstone = parser.getValueAsBoolean();
+                } else if ("messageId".equals(field)) {
+                    return new RecordHeader(parser.getValueAsString(), tombstone);
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            log.warn("Skipping unreadable journal record", e);
+        }
+        return null;
+    }
+
+    /**
+     * Imports the messages of the former single-file storage into the journal and keeps the
+     * original file as a backup.
+     */
+    private void migrateLegacyFile() throws IOException {
+        Path legacyFile = Paths.get(storagePath, LEGACY_FILE_NAME);
+        if (!Files.exists(legacyFile) || Files.size(legacyFile) == 0) {
+            return;
+        }
+        List<StoredMessage> messages = objectMapper.readValue(legacyFile.toFile(),
+                objectMapper.getTypeFactory().constructCollectionType(List.class, StoredMessage.class));
+        List<PendingWrite> writes = messages.stream()
+                .map(message -> new PendingWrite(message.getMessageId(), serialize(message), false, new CompletableFuture<>()))
+                .toList();
+        commit(writes);
+        if (writes.stream().anyMatch(write -> write.completion().isCompletedExceptionally())) {
+            throw new IOException("Failed to migrate messages from " + legacyFile);
+        }
+        activeSegment.force();
+        Files.move(legacyFile, legacyFile.resolveSibling(LEGACY_FILE_NAME + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Migrated {} message(s) from {} into the message journal", messages.size(), legacyFile);
+    }
+
+    private byte[] serialize(StoredMessage message) {
+        try {
+            return toRecord(objectMapper.writeValueAsBytes(message));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize message " + message.getMessageId(), e);
+        }
+    }
+
+    private byte[] tombstone(String messageId) {
+        ObjectNode tombstone = objectMapper.createObjectNode()
+                .put(TOMBSTONE_FIELD, true)
+                .put("messageId", messageId);
+        try {
+            return toRecord(objectMapper.writeValueAsBytes(tombstone));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize tombstone of message " + messageId, e);
+        }
+    }
+
+    private static byte[] toRecord(byte[] json) {
+        byte[] record = new byte[json.length + 1];
+        System.arraycopy(json, 0, record, 0, json.length);
+        record[json.length] = RECORD_SEPARATOR;
+        return record;
+    }
+
+    private StoredMessage deserialize(byte[] record) throws IOException {
+        return objectMapper.readValue(record, 0, record.length - 1, StoredMessage.class);
+    }
+
+    private Path getJournalDirectory() {
+        return Paths.get(storagePath, JOURNAL_DIRECTORY);
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long parseSegmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String segmentFileName(long id) {
+        return String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Position of a single record inside the journal.
+     */
+    record RecordLocation(long segmentId, long offset, int length) {
+    }
+
+    /**
+     * The identifying fields of a record.
+     */
+    private record RecordHeader(String messageId, boolean tombstone) {
+    }
+
+    /**
+     * A serialized record waiting to be committed.
+     */
+    private record PendingWrite(String messageId, byte[] record, boolean tombstone, CompletableFuture<Void> completion) {
+    }
+
+    /**
+     * A single journal file. Reads use positional I/O and may run concurrently with appends.
+     */
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong size;
+
+        private Segment(long id, Path path, FileChannel channel) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = new AtomicLong(channel.size());
+        }
+
+        static Segment open(Path path, long id) throws IOException {
+            return new Segment(id, path, FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+
+        long size() {
+            return size.get();
+        }
+
+        /**
+         * Appends the records with a single gathering write. Only one thread may append at a time.
+         */
+        long append(ByteBuffer[] records) throws IOException {
+            long offset = size.get();
+            long remaining = 0;
+            for (ByteBuffer record : records) {
+                remaining += record.remaining();
+            }
+            channel.position(offset);
+            while (remaining > 0) {
+                remaining -= channel.write(records);
+            }
+            size.set(channel.position());
+            return offset;
+        }
+
+        byte[] read(RecordLocation location) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length());
+            long position = location.offset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of journal segment " + path);
+                }
+                position += read;
+            }
+            return buffer.array();
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close journal segment {}", path, e);
+            }
+        }
+    }
+}
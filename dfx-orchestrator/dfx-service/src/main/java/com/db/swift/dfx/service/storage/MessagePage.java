@@ -0,0 +1,12 @@
+package com.db.swift.dfx.service.storage;
+
+import java.util.List;
+
+/**
+ * A page of messages, or projections of them, in timestamp order.
+ *
+ * @param messages   The messages of this page.
+ * @param nextCursor The cursor to request the next page with, or null if this is the last page.
+ */
+public record MessagePage<T>(List<T> messages, MessageCursor nextCursor) {
+}
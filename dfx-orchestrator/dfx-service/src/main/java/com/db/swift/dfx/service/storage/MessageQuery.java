@@ -0,0 +1,42 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Filter criteria for querying stored messages. Criteria that are {@code null} are ignored,
+ * all other criteria have to match.
+ */
+@Value
+@Builder
+public class MessageQuery {
+    StoredMessage.TransactionStatusEnum transactionStatus;
+    StoredMessage.DirectionEnum direction;
+    /**
+     * Matches the BIC of either the debitor or the creditor agent.
+     */
+    String bic;
+    /**
+     * Matches the LEI of either the debitor or the creditor agent.
+     */
+    String lei;
+    /**
+     * Matches either the source or the target currency/token.
+     */
+    String ccy;
+    /**
+     * Matches messages with a timestamp at or after this point in time.
+     */
+    OffsetDateTime from;
+    /**
+     * Matches messages with a timestamp before this point in time.
+     */
+    OffsetDateTime to;
+
+    public static MessageQuery all() {
+        return MessageQuery.builder().build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable backing layer for {@link StoredMessage} records.
+ * <p>
+ * The backend is chosen with {@code dfx.storage.backend}:
+ * <ul>
+ *     <li>{@code journal} (default) - segmented append-only JSON journal under {@code dfx.storage.path}, see {@link MessageJournal}</li>
+ *     <li>{@code memory} - keeps everything on the heap only, intended for load tests</li>
+ *     <li>{@code h2} - embedded on-disk H2 database running in-process</li>
+ * </ul>
+ * Lookups and queries on the hot path are served by the {@link IndexedMessageStore}, so a repository only has to
+ * persist the latest state of every message and hand it back on startup.
+ */
+public interface MessageRepository {
+
+    /**
+     * Persists the current state of a message, replacing any previous state with the same ID.
+     *
+     * @param message The message to persist.
+     */
+    void save(StoredMessage message);
+
+    /**
+     * Persists the current state of several messages. Backends that support it write all of them with a single
+     * commit; the default implementation saves them one by one.
+     *
+     * @param messages The messages to persist.
+     */
+    default void saveAll(Collection<StoredMessage> messages) {
+        messages.forEach(this::save);
+    }
+
+    /**
+     * Removes a message. Deleting a message that does not exist has no effect.
+     *
+     * @param messageId The ID of the message to delete.
+     */
+    void delete(String messageId);
+
+    /**
+     * Reads the latest persisted state of a message.
+     *
+     * @param messageId The ID of the message to read.
+     * @return An Optional containing the message, or empty if the repository does not contain it.
+     */
+    Optional<StoredMessage> findById(String messageId);
+
+    /**
+     * Reads the latest persisted state of every message.
+     */
+    List<StoredMessage> findAll();
+}
@@ -0,0 +1,50 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.MessageSummary;
+import com.db.swift.dfx.openapi.model.StoredMessage;
+
+/**
+ * Builds the {@link MessageSummary} of a {@link StoredMessage}, i.e. everything but its payloads and audit trail.
+ */
+public final class MessageSummaries {
+
+    private MessageSummaries() {
+    }
+
+    public static MessageSummary of(StoredMessage message) {
+        return MessageSummary.builder()
+                .messageId(message.getMessageId())
+                .version(message.getVersion())
+                .changeSeq(message.getChangeSeq())
+                .timestamp(message.getTimestamp())
+                .direction(message.getDirection() == null ? null
+                        : MessageSummary.DirectionEnum.fromValue(message.getDirection().getValue()))
+                .transactionStatus(message.getTransactionStatus() == null ? null
+                        : MessageSummary.TransactionStatusEnum.fromValue(message.getTransactionStatus().getValue()))
+                .debitorAgentLegalName(message.getDebitorAgentLegalName())
+                .debitorAgentBIC(message.getDebitorAgentBIC())
+                .debitorAgentLEI(message.getDebitorAgentLEI())
+                .debitorLEIStatus(message.getDebitorLEIStatus())
+                .creditorAgentLegalName(message.getCreditorAgentLegalName())
+                .creditorAgentBIC(message.getCreditorAgentBIC())
+                .creditorAgentLEI(message.getCreditorAgentLEI())
+                .creditorLEIStatus(message.getCreditorLEIStatus())
+                .ccy(message.getCcy())
+                .amt(message.getAmt())
+                .targetCcy(message.getTargetCcy())
+                .targetAmt(message.getTargetAmt())
+                .fxRate(message.getFxRate())
+                .fxTradeDate(message.getFxTradeDate())
+                .debitorNetwork(message.getDebitorNetwork())
+                .creditorNetwork(message.getCreditorNetwork())
+                .debitorWallet(message.getDebitorWallet())
+                .creditorWallet(message.getCreditorWallet())
+                // The details are mutable, so the summary gets its own copy.
+                .blckchnDetails(message.getBlckchnDetails() == null ? null
+                        : message.getBlckchnDetails().toBuilder().build())
+                .blckchnTransactionValidationStatus(message.getBlckchnTransactionValidationStatus() == null ? null
+                        : MessageSummary.BlckchnTransactionValidationStatusEnum.fromValue(
+                                message.getBlckchnTransactionValidationStatus().getValue()))
+                .build();
+    }
+}
@@ -0,0 +1,22 @@
+package com.db.swift.dfx.service.storage;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a message is updated based on an outdated version, i.e. another stage has
+ * persisted changes to the same message in the meantime.
+ */
+@Getter
+public class MessageVersionConflictException extends RuntimeException {
+    private final String messageId;
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    public MessageVersionConflictException(String messageId, long expectedVersion, long actualVersion) {
+        super("Message " + messageId + " was modified concurrently: expected version " + expectedVersion
+                + " but found " + actualVersion);
+        this.messageId = messageId;
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+}
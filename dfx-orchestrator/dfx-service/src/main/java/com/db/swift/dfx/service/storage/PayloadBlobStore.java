@@ -0,0 +1,39 @@
+package com.db.swift.dfx.service.storage;
+
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for message bodies such as the original pacs.008 and the generated fxtr.014.
+ * <p>
+ * Each blob is stored under its SHA-256 hash, which is also the reference kept in the message record.
+ * Identical payloads are therefore stored only once, and a blob never changes after it has been written.
+ */
+public interface PayloadBlobStore {
+
+    Pattern REFERENCE_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Stores a blob unless a blob with the same content already exists.
+     *
+     * @param content The uncompressed content.
+     * @return The reference (hex encoded SHA-256 of the content) to load the blob again.
+     */
+    String put(byte[] content);
+
+    /**
+     * Loads a blob.
+     *
+     * @param reference The reference returned by {@link #put(byte[])}.
+     * @return The uncompressed content.
+     */
+    byte[] get(String reference);
+
+    /**
+     * @throws IllegalArgumentException if the reference is not a hex encoded SHA-256 hash.
+     */
+    static void validate(String reference) {
+        if (reference == null || !REFERENCE_PATTERN.matcher(reference).matches()) {
+            throw new IllegalArgumentException("Invalid blob reference: " + reference);
+        }
+    }
+}
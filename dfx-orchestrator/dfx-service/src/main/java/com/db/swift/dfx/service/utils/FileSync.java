@@ -0,0 +1,25 @@
+package com.db.swift.dfx.service.utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Flushes files and directories to disk. A file written and renamed into place only survives a crash once both its
+ * content and the directory entry pointing to it are forced.
+ */
+public final class FileSync {
+
+    private FileSync() {
+    }
+
+    /**
+     * Forces the content of a file, or the entries of a directory, to disk.
+     */
+    public static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -1,31 +1,70 @@
 package com.db.swift.dfx.service.utils;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Marshals and unmarshals JAXB objects.
+ * <p>
+ * {@link JAXBContext}s and compiled schemas are created once and shared. {@link Marshaller}s and
+ * {@link Unmarshaller}s are not thread-safe but still costly to create, so each context keeps a small pool of idle
+ * instances; an instance is only returned to its pool after it was used successfully. The contexts of the message
+ * types handled by the service are created on startup, so the first message after a deployment does not pay for it.
+ */
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class JaxbMarshallingUtil {
 
+    private static final int MAX_IDLE_PER_CONTEXT = 32;
+    private static final List<Class<?>> WARM_UP_CLASSES = List.of(
+            com.db.swift.dfx.jaxb.model.pacs008.Document.class,
+            com.db.swift.dfx.jaxb.model.pacs008v09.Document.class,
+            com.db.swift.dfx.jaxb.model.fxtr014.Document.class);
+
+    private final XsdSchemaRegistry schemaRegistry;
     private final Map<Class<?>, JAXBContext> jaxbContextCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, BlockingQueue<Marshaller>> marshallerPools = new ConcurrentHashMap<>();
+    private final Map<Class<?>, BlockingQueue<Unmarshaller>> unmarshallerPools = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the contexts of the message types and fills their pools with one marshaller and unmarshaller each.
+     */
+    @PostConstruct
+    public void warmUp() throws JAXBException {
+        long start = System.nanoTime();
+        for (Class<?> clazz : WARM_UP_CLASSES) {
+            releaseMarshaller(clazz, borrowMarshaller(clazz));
+            releaseUnmarshaller(clazz, borrowUnmarshaller(clazz));
+        }
+        log.info("Created JAXB contexts for {} in {} ms", WARM_UP_CLASSES.stream().map(Class::getName).toList(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
 
     // IMPROVEMENT: Centralized method to get a cached JAXBContext.
-    private JAXBContext getJaxbContext(Class<?> clazz) {
+    JAXBContext getJaxbContext(Class<?> clazz) {
         try {
             return jaxbContextCache.computeIfAbsent(clazz, key -> {
                 try {
@@ -57,22 +96,73 @@ public class JaxbMarshallingUtil {
         if (objectToMarshall == null) {
             return null;
         }
+        Class<?> objectClass = declaredClass(objectToMarshall);
+        Marshaller marshaller = borrowMarshaller(objectClass);
+        StringWriter stringWriter = new StringWriter();
+        marshaller.marshal(objectToMarshall, stringWriter);
+        releaseMarshaller(objectClass, marshaller);
+        return stringWriter.toString();
+    }
 
-        Class<?> objectClass = objectToMarshall.getClass();
+    /**
+     * Converts a JAXB-annotated Java object into formatted, UTF-8 encoded XML written to a stream, without
+     * building the document as a string first.
+     *
+     * @param objectToMarshall The JAXB-annotated object to be marshalled.
+     * @param outputStream     The stream to write the XML to; it is not closed.
+     * @param <T>              The generic type of the source object.
+     * @throws JAXBException if any error occurs during the marshalling process.
+     */
+    public <T> void marshall(T objectToMarshall, OutputStream outputStream) throws JAXBException {
+        Class<?> objectClass = declaredClass(objectToMarshall);
+        Marshaller marshaller = borrowMarshaller(objectClass);
+        marshaller.marshal(objectToMarshall, outputStream);
+        releaseMarshaller(objectClass, marshaller);
+    }
+
+    private static Class<?> declaredClass(Object objectToMarshall) {
+        // Types without @XmlRootElement are passed wrapped in a JAXBElement.
+        Class<?> objectClass = objectToMarshall instanceof JAXBElement<?> element
+                ? element.getDeclaredType() : objectToMarshall.getClass();
         log.debug("Marshalling object of class {}", objectClass.getSimpleName());
+        return objectClass;
+    }
 
+    private Marshaller borrowMarshaller(Class<?> clazz) throws JAXBException {
+        Marshaller marshaller = pool(marshallerPools, clazz).poll();
+        if (marshaller != null) {
+            return marshaller;
+        }
         try {
-            JAXBContext jaxbContext = getJaxbContext(objectClass);
-            Marshaller marshaller = jaxbContext.createMarshaller();
+            marshaller = getJaxbContext(clazz).createMarshaller();
             // For pretty-printing the XML output
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            return marshaller;
+        } catch (RuntimeException e) {
+            // Unwrap the original JAXBException if it was thrown during context creation.
+            if (e.getCause() instanceof JAXBException) {
+                throw (JAXBException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-            StringWriter stringWriter = new StringWriter();
-            marshaller.marshal(objectToMarshall, stringWriter);
+    private void releaseMarshaller(Class<?> clazz, Marshaller marshaller) {
+        pool(marshallerPools, clazz).offer(marshaller);
+    }
 
-            return stringWriter.toString();
+    /**
+     * Takes an idle unmarshaller of the context of a class from its pool, or creates one. The unmarshaller does
+     * not validate; hand it back with {@link #releaseUnmarshaller(Class, Unmarshaller)} once it was used successfully.
+     */
+    Unmarshaller borrowUnmarshaller(Class<?> clazz) throws JAXBException {
+        Unmarshaller unmarshaller = pool(unmarshallerPools, clazz).poll();
+        if (unmarshaller != null) {
+            return unmarshaller;
+        }
+        try {
+            return getJaxbContext(clazz).createUnmarshaller();
         } catch (RuntimeException e) {
-            // Unwrap the original JAXBException if it was thrown during context creation.
             if (e.getCause() instanceof JAXBException) {
                 throw (JAXBException) e.getCause();
             }
@@ -80,6 +170,15 @@ public class JaxbMarshallingUtil {
         }
     }
 
+    void releaseUnmarshaller(Class<?> clazz, Unmarshaller unmarshaller) {
+        unmarshaller.setSchema(null);
+        pool(unmarshallerPools, clazz).offer(unmarshaller);
+    }
+
+    private static <T> BlockingQueue<T> pool(Map<Class<?>, BlockingQueue<T>> pools, Class<?> clazz) {
+        return pools.computeIfAbsent(clazz, key -> new ArrayBlockingQueue<>(MAX_IDLE_PER_CONTEXT));
+    }
+
     /**
      * Unmarshalls an XML string into a Java object of the specified type,
      * validating it against the provided XSD schema.
@@ -93,24 +192,54 @@ public class JaxbMarshallingUtil {
      * @throws SAXException  if an error occurs during schema validation.
      */
     public <T> T unmarshall(String xmlString, Class<T> targetClass, String xsdPath) throws JAXBException, SAXException {
-        log.debug("Unmarshalling XML for class {} using schema {}", targetClass.getSimpleName(), xsdPath);
-
-        StringReader stringReader = new StringReader(xmlString);
+        return unmarshall(new StreamSource(new StringReader(xmlString)), targetClass, xsdPath);
+    }
 
-        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        InputStream schemaStream = getClass().getResourceAsStream(xsdPath);
-        if (schemaStream == null) {
-            throw new IllegalStateException("Cannot find XSD schema in classpath: " + xsdPath);
-        }
-        Schema schema = factory.newSchema(new StreamSource(schemaStream));
+    /**
+     * Unmarshalls XML read from a stream into a Java object of the specified type, validating it against the
+     * provided XSD schema. The parser detects the encoding from the XML declaration, so the content does not have
+     * to be decoded into a string first.
+     *
+     * @param xml         The XML content to parse.
+     * @param targetClass The target class to convert the XML into.
+     * @param xsdPath     The classpath path to the XSD file for validation.
+     * @param <T>         The generic type of the target object.
+     * @return An object of type T containing the data from the XML.
+     * @throws JAXBException if an error occurs during unmarshalling.
+     * @throws SAXException  if an error occurs during schema validation.
+     */
+    public <T> T unmarshall(InputStream xml, Class<T> targetClass, String xsdPath) throws JAXBException, SAXException {
+        return unmarshall(new StreamSource(xml), targetClass, xsdPath);
+    }
 
-        JAXBContext jaxbContext = getJaxbContext(targetClass);
+    private <T> T unmarshall(StreamSource source, Class<T> targetClass, String xsdPath) throws JAXBException, SAXException {
+        log.debug("Unmarshalling XML for class {} using schema {}", targetClass.getSimpleName(), xsdPath);
 
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        unmarshaller.setSchema(schema);
+        Unmarshaller unmarshaller = borrowUnmarshaller(targetClass);
+        unmarshaller.setSchema(schemaRegistry.getSchema(xsdPath));
 
-        return unmarshaller
-                .unmarshal(new StreamSource(stringReader), targetClass)
+        T result = unmarshaller
+                .unmarshal(source, targetClass)
                 .getValue();
+        releaseUnmarshaller(targetClass, unmarshaller);
+        return result;
+    }
+
+    /**
+     * Validates an XML document against the provided XSD schema without building an object graph,
+     * so documents of any size are validated in constant memory.
+     *
+     * @param xml     The XML content to validate.
+     * @param xsdPath The classpath path to the XSD file for validation.
+     * @throws SAXException if the document does not match the schema.
+     * @throws IOException  if the document can not be read.
+     */
+    public void validate(InputStream xml, String xsdPath) throws SAXException, IOException {
+        log.debug("Validating XML using schema {}", xsdPath);
+        Validator validator = schemaRegistry.getSchema(xsdPath).newValidator();
+        // The document comes from outside, it must not make the parser load anything else.
+        validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        validator.validate(new StreamSource(xml));
     }
 }
@@ -0,0 +1,82 @@
+package com.db.swift.dfx.service.utils;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Exposes the elements of an iterator as newline-delimited JSON. Elements are serialized one at a time while the
+ * stream is read, so only a single element is held in memory regardless of the number of elements.
+ */
+public class NdjsonInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Iterator<?> elements;
+    private final ObjectWriter objectWriter;
+    private final Closeable onClose;
+
+    private byte[] line = EMPTY;
+    private int position;
+
+    /**
+     * @param elements     The elements to serialize.
+     * @param objectWriter The writer to serialize a single element with.
+     * @param onClose      Called when the stream is closed, e.g. to release the resources behind the iterator.
+     */
+    public NdjsonInputStream(Iterator<?> elements, ObjectWriter objectWriter, Closeable onClose) {
+        this.elements = elements;
+        this.objectWriter = objectWriter;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return line[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < length && fill()) {
+            int count = Math.min(length - read, line.length - position);
+            System.arraycopy(line, position, buffer, offset + read, count);
+            position += count;
+            read += count;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        onClose.close();
+    }
+
+    /**
+     * Serializes the next element once the current line is consumed.
+     *
+     * @return false if all elements have been read.
+     */
+    private boolean fill() throws IOException {
+        while (position == line.length) {
+            if (!elements.hasNext()) {
+                return false;
+            }
+            byte[] json = objectWriter.writeValueAsBytes(elements.next());
+            line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = '\n';
+            position = 0;
+        }
+        return true;
+    }
+}
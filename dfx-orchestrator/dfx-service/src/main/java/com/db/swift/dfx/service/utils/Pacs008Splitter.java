@@ -0,0 +1,159 @@
+package com.db.swift.dfx.service.utils;
+
+import com.db.swift.dfx.service.iso20022.Pacs008Version;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits a pacs.008 message into one pacs.008 message per credit transfer transaction.
+ * <p>
+ * The message is read with StAX and only a single {@code CdtTrfTxInf} is unmarshalled at a time, so the memory
+ * needed does not depend on the number of transactions. Every resulting message carries a copy of the group header
+ * with the number of transactions and sums adjusted to its single transaction. Supplementary data of the original
+ * message is not carried over. The message is read with the JAXB classes of its {@link Pacs008Version}.
+ * <p>
+ * The splitter does not validate the message; validate it against the schema first, see
+ * {@link JaxbMarshallingUtil#validate(InputStream, String)}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class Pacs008Splitter {
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private final JaxbMarshallingUtil jaxbMarshallingUtil;
+
+    /**
+     * Returns the transactions of a pacs.008 message as single-transaction messages, in document order.
+     * The stream reads the message lazily and must be closed.
+     *
+     * @param xml     The pacs.008 message.
+     * @param version The version of the message.
+     * @return The single-transaction messages.
+     * @throws IllegalArgumentException if the message is not a well-formed pacs.008 message of the version; while
+     *                                  reading the stream this exception may be thrown by its terminal operation as well.
+     */
+    public <D, H, T> Stream<D> split(InputStream xml, Pacs008Version<D, H, T> version) {
+        TransactionIterator<D, H, T> transactions = new TransactionIterator<>(xml, version);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(transactions, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(transactions::close);
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // The message comes from outside, it must not make the parser load anything else.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private final class TransactionIterator<D, H, T> implements Iterator<D> {
+        private final Pacs008Version<D, H, T> version;
+        private final XMLStreamReader reader;
+        private final Unmarshaller unmarshaller;
+        private final H header;
+        private D next;
+        private boolean finished;
+        private int count;
+
+        private TransactionIterator(InputStream xml, Pacs008Version<D, H, T> version) {
+            this.version = version;
+            try {
+                this.reader = inputFactory.createXMLStreamReader(xml);
+                this.unmarshaller = jaxbMarshallingUtil.borrowUnmarshaller(version.getDocumentClass());
+                expectStartElement("Document");
+                expectStartElement("FIToFICstmrCdtTrf");
+                expectStartElement("GrpHdr");
+                this.header = unmarshaller.unmarshal(reader, version.getHeaderClass()).getValue();
+            } catch (XMLStreamException | JAXBException e) {
+                throw new IllegalArgumentException("Malformed pacs.008 message: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                next = readNext();
+                finished = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public D next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            D document = next;
+            next = null;
+            return document;
+        }
+
+        private D readNext() {
+            try {
+                if (!nextElement() || !"CdtTrfTxInf".equals(reader.getLocalName())) {
+                    if (!String.valueOf(count).equals(version.nbOfTxs(header))) {
+                        log.warn("pacs.008 message {} announces {} transactions but contains {}",
+                                version.headerMsgId(header), version.nbOfTxs(header), count);
+                    }
+                    return null;
+                }
+                T transaction = unmarshaller.unmarshal(reader, version.getTransactionClass()).getValue();
+                count++;
+                return version.singleTransaction(header, transaction);
+            } catch (XMLStreamException | JAXBException e) {
+                throw new IllegalArgumentException("Malformed pacs.008 message after transaction " + count + ": " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Moves to the next start element of the current level.
+         *
+         * @return false if the enclosing element ended instead.
+         */
+        private boolean nextElement() throws XMLStreamException {
+            // After unmarshalling an element the reader already points at the event following it.
+            while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                if (reader.getEventType() == XMLStreamConstants.END_ELEMENT || !reader.hasNext()) {
+                    return false;
+                }
+                reader.next();
+            }
+            return true;
+        }
+
+        private void expectStartElement(String localName) throws XMLStreamException {
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+                    || !localName.equals(reader.getLocalName()) || !version.getNamespace().equals(reader.getNamespaceURI())) {
+                throw new XMLStreamException("Expected element " + localName + " of " + version.getNamespace()
+                        + " but found " + reader.getName(), reader.getLocation());
+            }
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                log.debug("Failed to close pacs.008 reader", e);
+            }
+            if (finished) {
+                jaxbMarshallingUtil.releaseUnmarshaller(version.getDocumentClass(), unmarshaller);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.db.swift.dfx.service.utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that keys are hashed onto. Operations on the same key are always
+ * serialized, while operations on different keys only contend if they share a stripe.
+ */
+public class StripedLock {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    /**
+     * @param minimumStripes The minimum number of stripes, rounded up to the next power of two.
+     */
+    public StripedLock(int minimumStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        this.stripes = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public Lock get(Object key) {
+        return stripes[indexOf(key)];
+    }
+
+    /**
+     * Returns the distinct stripes of several keys in a fixed global order. Acquiring them in the returned
+     * order can not deadlock with other callers doing the same.
+     */
+    public List<Lock> getAll(Collection<?> keys) {
+        return keys.stream()
+                .mapToInt(this::indexOf)
+                .distinct()
+                .sorted()
+                .mapToObj(index -> stripes[index])
+                .toList();
+    }
+
+    private int indexOf(Object key) {
+        int hash = key.hashCode();
+        // Spread the higher bits, as String hash codes of UUIDs differ mostly in those.
+        hash ^= (hash >>> 16);
+        return hash & mask;
+    }
+
+    public int size() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,82 @@
+package com.db.swift.dfx.service.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates virtual threads where the JVM supports them (Java 21 and later), for work that spends most of its time
+ * blocked on I/O. The service is built for Java 17, so the virtual thread API is looked up reflectively; on an older
+ * JVM the factories fall back to platform daemon threads.
+ * <p>
+ * A virtual thread blocked inside a {@code synchronized} block or method pins its carrier thread. Code that blocks
+ * on I/O or waits while holding a lock therefore uses {@link java.util.concurrent.locks.ReentrantLock}s.
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookUp();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * A factory of virtual threads named {@code <prefix><n>}, or of platform daemon threads if the JVM does not
+     * support virtual threads.
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                builder = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class)
+                        .invoke(builder, prefix, 1L);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread factory", e);
+            }
+        }
+        return platformFactory(prefix);
+    }
+
+    /**
+     * Runs every task on a new thread of {@link #factory(String)}.
+     */
+    public static Executor executor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        return task -> factory.newThread(task).start();
+    }
+
+    /**
+     * A factory of platform daemon threads named {@code <prefix><n>}.
+     */
+    public static ThreadFactory platformFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Method lookUp() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // Fails with an UnsupportedOperationException while virtual threads are a disabled preview feature.
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            log.debug("Virtual threads are not enabled in this JVM", e.getCause());
+            return null;
+        }
+    }
+}
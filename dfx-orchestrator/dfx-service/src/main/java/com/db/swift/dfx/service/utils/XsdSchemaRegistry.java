@@ -0,0 +1,76 @@
+package com.db.swift.dfx.service.utils;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled XSD schemas, shared by all threads.
+ * <p>
+ * Compiling a schema means parsing the XSD and building its grammar, which takes far longer than validating a
+ * message against it. All schemas under {@code /xsd} on the classpath are therefore compiled once on startup;
+ * {@link Schema} objects are immutable and thread-safe. Schemas at other paths are compiled on first use.
+ */
+@Component
+@Slf4j
+public class XsdSchemaRegistry {
+
+    private static final String XSD_LOCATION_PATTERN = "classpath*:xsd/*.xsd";
+    private static final String XSD_DIRECTORY = "/xsd/";
+
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void compileAll() throws IOException {
+        long start = System.nanoTime();
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(XSD_LOCATION_PATTERN);
+        for (Resource resource : resources) {
+            String xsdPath = XSD_DIRECTORY + resource.getFilename();
+            try {
+                schemas.put(xsdPath, compile(resource.getURL()));
+            } catch (SAXException e) {
+                throw new IllegalStateException("Invalid XSD schema in classpath: " + xsdPath, e);
+            }
+        }
+        log.info("Compiled {} XSD schema(s) in {} ms: {}", schemas.size(),
+                (System.nanoTime() - start) / 1_000_000, schemas.keySet());
+    }
+
+    /**
+     * Returns the compiled schema of an XSD on the classpath.
+     *
+     * @param xsdPath The classpath path to the XSD file (e.g. "/xsd/pacs.008.001.14.xsd").
+     * @return The compiled schema.
+     * @throws IllegalStateException if there is no XSD at that path or it can not be compiled.
+     */
+    public Schema getSchema(String xsdPath) {
+        return schemas.computeIfAbsent(xsdPath, path -> {
+            URL schemaUrl = getClass().getResource(path);
+            if (schemaUrl == null) {
+                throw new IllegalStateException("Cannot find XSD schema in classpath: " + path);
+            }
+            try {
+                return compile(schemaUrl);
+            } catch (SAXException e) {
+                throw new IllegalStateException("Invalid XSD schema in classpath: " + path, e);
+            }
+        });
+    }
+
+    private static Schema compile(URL schemaUrl) throws SAXException {
+        // SchemaFactory is not thread-safe, so every compilation gets its own.
+        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        return factory.newSchema(schemaUrl);
+    }
+}
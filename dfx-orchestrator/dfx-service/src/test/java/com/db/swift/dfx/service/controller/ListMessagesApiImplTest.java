@@ -0,0 +1,107 @@
+package com.db.swift.dfx.service.controller;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.constants.DfxConstants;
+import com.db.swift.dfx.service.services.MessageStorageService;
+import com.db.swift.dfx.service.storage.InMemoryMessageRepository;
+import com.db.swift.dfx.service.storage.InMemoryPayloadBlobStore;
+import com.db.swift.dfx.service.storage.IndexedMessageStore;
+import com.db.swift.dfx.service.storage.MessageArchive;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ListMessagesApiImplTest {
+
+    @TempDir
+    Path storage;
+
+    private MessageStorageService messageStorageService;
+
+    @BeforeEach
+    void setUp() {
+        messageStorageService = new MessageStorageService(new InMemoryMessageRepository(), new IndexedMessageStore(),
+                new InMemoryPayloadBlobStore(),
+                new MessageArchive(Jackson2ObjectMapperBuilder.json().build(), storage.toString()),
+                event -> {
+                }, 16, true, Duration.ofDays(30));
+        messageStorageService.loadMessages();
+    }
+
+    @Test
+    void answersUnchangedPollsWithNotModified() {
+        messageStorageService.storeMessage(message());
+        ResponseEntity<List<StoredMessage>> first = list(null);
+        String eTag = first.getHeaders().getETag();
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(first.getBody()).hasSize(1);
+        assertThat(list(eTag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        messageStorageService.storeMessage(message());
+        ResponseEntity<List<StoredMessage>> changed = list(eTag);
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(eTag);
+        assertThat(changed.getBody()).hasSize(2);
+    }
+
+    @Test
+    void reportsOnlyChangesAfterTheGivenPosition() {
+        StoredMessage first = message();
+        messageStorageService.storeMessage(first);
+        long position = Long.parseLong(changes(0).getHeaders().getFirst(DfxConstants.CHANGE_SEQUENCE_HEADER));
+        StoredMessage second = message();
+        messageStorageService.storeMessage(second);
+        StoredMessage updated = messageStorageService.findMessageById(first.getMessageId()).orElseThrow();
+        updated.setTransactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED);
+        messageStorageService.updateMessage(updated);
+
+        ResponseEntity<List<StoredMessage>> response = changes(position);
+
+        assertThat(response.getBody()).extracting(StoredMessage::getMessageId)
+                .containsExactly(second.getMessageId(), first.getMessageId());
+        assertThat(response.getHeaders().getFirst(DfxConstants.CHANGE_SEQUENCE_HEADER))
+                .isEqualTo(Long.toString(response.getBody().get(1).getChangeSeq()));
+        assertThat(changes(response.getBody().get(1).getChangeSeq()).getBody()).isEmpty();
+    }
+
+    private ResponseEntity<List<StoredMessage>> list(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/list");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        ListMessagesApiImpl api = new ListMessagesApiImpl(messageStorageService,
+                new ServletWebRequest(request, new MockHttpServletResponse()));
+        return api.getMessages(null, 500, null, null, null, null, null, null, false);
+    }
+
+    private ResponseEntity<List<StoredMessage>> changes(long since) {
+        ListMessagesApiImpl api = new ListMessagesApiImpl(messageStorageService,
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/list/changes"), new MockHttpServletResponse()));
+        return api.getMessageChanges(since, 500, false);
+    }
+
+    private static StoredMessage message() {
+        StoredMessage message = new StoredMessage();
+        message.setMessageId(UUID.randomUUID().toString());
+        message.setTransactionStatus(StoredMessage.TransactionStatusEnum.RECEIVED);
+        message.setTimestamp(OffsetDateTime.now());
+        message.setCcy("EUR");
+        return message;
+    }
+}
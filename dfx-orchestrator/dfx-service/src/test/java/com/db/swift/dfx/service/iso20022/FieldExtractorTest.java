@@ -0,0 +1,58 @@
+package com.db.swift.dfx.service.iso20022;
+
+import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
+import com.db.swift.dfx.service.utils.Pacs008Splitter;
+import com.db.swift.dfx.service.utils.XsdSchemaRegistry;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The streaming extraction has to yield the same fields as mapping the unmarshalled message, which is what the
+ * ingestion falls back to for messages with several transactions.
+ */
+class FieldExtractorTest {
+
+    private static final Path EXAMPLES = Path.of("../http-requests/example-xml");
+
+    private final XsdSchemaRegistry schemaRegistry = new XsdSchemaRegistry();
+    private final Pacs008Splitter splitter = new Pacs008Splitter(new JaxbMarshallingUtil(schemaRegistry));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"inbound/usdc-to-deur-pacs008.xml", "inbound/usdc-to-eur-pacs008.xml",
+            "outbound/usdc-to-deur-pacs008.xml", "outbound/usdc-to-eur-pacs008.xml",
+            "withFx/usd-to-usdc-pacs008.xml", "withFx/usdc-to-usdt-pacs008.xml", "withFx/usdt-to-eur-pacs008.xml"})
+    void extractsTheSameFieldsAsTheUnmarshalledMessage(String example) throws Exception {
+        byte[] xml = Files.readAllBytes(EXAMPLES.resolve(example));
+        String content = new String(xml, StandardCharsets.UTF_8);
+        Pacs008Version<?, ?, ?> version = content.contains(Pacs008V14.NAMESPACE) ? new Pacs008V14() : new Pacs008V09();
+
+        assertSameFields(version, xml);
+    }
+
+    private <D> void assertSameFields(Pacs008Version<D, ?, ?> version, byte[] xml) throws SAXException, IOException {
+        Pacs008Fields streamed = version.extractFields(new ByteArrayInputStream(xml), schemaRegistry.getSchema(version.getXsdPath()));
+        List<D> documents;
+        try (Stream<D> split = splitter.split(new ByteArrayInputStream(xml), version)) {
+            documents = split.toList();
+        }
+        Pacs008Fields unmarshalled = version.fields(documents.get(0));
+
+        assertThat(streamed.getTransactions()).isEqualTo(documents.size());
+        assertThat(streamed.get(Pacs008Field.MSG_ID)).isNotNull();
+        for (Pacs008Field field : Pacs008Field.values()) {
+            assertThat(streamed.get(field)).as(field.name()).isEqualTo(unmarshalled.get(field));
+        }
+        assertThat(streamed.idempotencyKey()).isEqualTo(unmarshalled.idempotencyKey());
+    }
+}
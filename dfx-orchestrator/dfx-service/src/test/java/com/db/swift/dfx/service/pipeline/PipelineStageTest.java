@@ -0,0 +1,131 @@
+package com.db.swift.dfx.service.pipeline;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineStageTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PipelineStage stage;
+
+    @AfterEach
+    void tearDown() {
+        if (stage != null) {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    void processesTheMessagesOfOneShardOneAfterTheOther() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<PipelineContext> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(100);
+        stage = open(context -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            processed.add(context);
+            running.decrementAndGet();
+            done.countDown();
+        }, 1, 100, RejectionPolicy.BLOCK);
+        List<PipelineContext> submitted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PipelineContext context = new PipelineContext("message-" + i);
+            submitted.add(context);
+            stage.submit(context);
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(overlaps).hasValue(0);
+        assertThat(processed).containsExactlyElementsOf(submitted);
+    }
+
+    @Test
+    void offerRejectsMessagesWhileTheStageIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        stage = open(context -> {
+            started.countDown();
+            await(release);
+        }, 1, 2, RejectionPolicy.BLOCK);
+
+        assertThat(stage.offer(new PipelineContext("message-0"))).isTrue();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(stage.offer(new PipelineContext("message-1"))).isTrue();
+        assertThat(stage.offer(new PipelineContext("message-2"))).isTrue();
+
+        assertThat(stage.remainingCapacity()).isZero();
+        assertThat(stage.offer(new PipelineContext("message-3"))).isFalse();
+        release.countDown();
+    }
+
+    @Test
+    void blockedSubmitReturnsOnceTheStageIsShutDown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        stage = open(context -> await(release), 1, 1, RejectionPolicy.BLOCK);
+        stage.submit(new PipelineContext("message-0"));
+        stage.submit(new PipelineContext("message-1"));
+        Thread blocked = new Thread(() -> stage.submit(new PipelineContext("message-2")));
+        blocked.start();
+
+        assertThat(stage.shutdown()).isEqualTo(1);
+        blocked.join(5000);
+
+        assertThat(blocked.isAlive()).isFalse();
+        release.countDown();
+    }
+
+    @Test
+    void reportsDepthAndLatencyPerShard() throws Exception {
+        CountDownLatch done = new CountDownLatch(20);
+        stage = open(context -> done.countDown(), 4, 100, RejectionPolicy.BLOCK);
+        for (int i = 0; i < 20; i++) {
+            stage.submit(new PipelineContext("message-" + i));
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.find("dfx.pipeline.shard.queue.depth").tag("stage", "stage").gauges()).hasSize(4);
+        assertThat(meterRegistry.find("dfx.pipeline.shard.wait").tag("shard", "0").timer()).isNotNull();
+        awaitProcessed(20);
+    }
+
+    private void awaitProcessed(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processed() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(processed()).isEqualTo(count);
+    }
+
+    private long processed() {
+        return meterRegistry.find("dfx.pipeline.shard.processing").timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private PipelineStage open(Consumer<PipelineContext> handler, int concurrency, int capacity,
+                                      RejectionPolicy rejectionPolicy) {
+        return new PipelineStage("stage", handler, concurrency, capacity, rejectionPolicy,
+                Executors.newCachedThreadPool(), meterRegistry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.db.swift.dfx.service.pipeline;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.services.BlockchainValidationService;
+import com.db.swift.dfx.service.services.FXService;
+import com.db.swift.dfx.service.services.MessageStorageService;
+import com.db.swift.dfx.service.services.VerificationService;
+import com.db.swift.dfx.service.storage.IndexedMessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProcessingPipelineTest {
+
+    private final VerificationService verificationService = mock(VerificationService.class);
+    private final MessageStorageService messageStorageService = mock(MessageStorageService.class);
+    private final ProcessingPipeline pipeline = new ProcessingPipeline(verificationService,
+            mock(BlockchainValidationService.class), mock(FXService.class), messageStorageService,
+            mock(ApplicationEventPublisher.class), "stage",
+            1, 10, RejectionPolicy.BLOCK, 1, 10, RejectionPolicy.BLOCK, 1, 10, RejectionPolicy.BLOCK,
+            false, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void keepsTheExceptionOfAFailedStepWhenWritingItsChangesFails() {
+        PipelineContext context = new PipelineContext(message(), null);
+        IllegalStateException stepFailure = new IllegalStateException("GLEIF unavailable");
+        IllegalStateException commitFailure = new IllegalStateException("Journal unavailable");
+        when(verificationService.verifyLeisForMessage(any())).thenAnswer(invocation -> {
+            context.markChanged();
+            throw stepFailure;
+        });
+        doThrow(commitFailure).when(messageStorageService).updateMessage(any());
+
+        assertThatThrownBy(() -> handler(pipeline.getLeiVerification()).accept(context))
+                .isSameAs(stepFailure)
+                .hasSuppressedException(commitFailure);
+    }
+
+    @Test
+    void writesTheNextStageWithTheChangesOfAStep() {
+        PipelineContext context = new PipelineContext(message(), null);
+        when(verificationService.verifyLeisForMessage(any())).thenReturn(true);
+
+        handler(pipeline.getLeiVerification()).accept(context);
+
+        verify(messageStorageService).updateMessage(argThat(message -> Integer.valueOf(1).equals(message.getPipelineStage())));
+    }
+
+    @Test
+    void clearsTheStageOfAFailedMessage() {
+        PipelineContext context = new PipelineContext(message(), null);
+        when(verificationService.verifyLeisForMessage(any())).thenReturn(false);
+
+        handler(pipeline.getLeiVerification()).accept(context);
+
+        verify(messageStorageService).updateMessage(argThat(message -> message.getPipelineStage() == null));
+    }
+
+    @Test
+    void keepsTheStageWhenTheStepThrows() {
+        StoredMessage message = message();
+        message.setPipelineStage(0);
+        when(verificationService.verifyLeisForMessage(any())).thenThrow(new IllegalStateException("GLEIF unavailable"));
+
+        assertThatThrownBy(() -> handler(pipeline.getLeiVerification()).accept(new PipelineContext(message, null)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(message.getPipelineStage()).isZero();
+    }
+
+    @Test
+    void resumesOnlyMessagesWaitingForAStageOnStartup() {
+        IndexedMessageStore store = new IndexedMessageStore();
+        StoredMessage waiting = message();
+        waiting.setPipelineStage(0);
+        store.put(waiting);
+        StoredMessage completed = message();
+        completed.setTransactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED);
+        store.put(completed);
+        when(messageStorageService.findPipelineStages()).thenAnswer(invocation -> store.findPipelineStages());
+        when(messageStorageService.findMessageById(any())).thenAnswer(invocation -> store.get(invocation.getArgument(0)));
+
+        pipeline.resume();
+
+        verify(verificationService, timeout(5000))
+                .verifyLeisForMessage(argThat(context -> context.getMessageId().equals(waiting.getMessageId())));
+        verify(messageStorageService, never()).findMessageById(completed.getMessageId());
+        verify(messageStorageService, never()).getAllMessages();
+        verify(messageStorageService, never()).findMessages(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<PipelineContext> handler(PipelineStage stage) {
+        return (Consumer<PipelineContext>) ReflectionTestUtils.getField(stage, "handler");
+    }
+
+    private static StoredMessage message() {
+        StoredMessage message = new StoredMessage();
+        message.setMessageId(UUID.randomUUID().toString());
+        message.setTransactionStatus(StoredMessage.TransactionStatusEnum.RECEIVED);
+        return message;
+    }
+}
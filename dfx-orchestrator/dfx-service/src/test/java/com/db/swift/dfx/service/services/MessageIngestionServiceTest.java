@@ -0,0 +1,89 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.service.iso20022.MessageRouter;
+import com.db.swift.dfx.service.iso20022.Pacs008V09;
+import com.db.swift.dfx.service.iso20022.Pacs008V14;
+import com.db.swift.dfx.service.iso20022.Pacs008Version;
+import com.db.swift.dfx.service.storage.IdempotencyIndex;
+import com.db.swift.dfx.service.utils.JaxbMarshallingUtil;
+import com.db.swift.dfx.service.utils.Pacs008Splitter;
+import com.db.swift.dfx.service.utils.XsdSchemaRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class MessageIngestionServiceTest {
+
+    private static final Path EXAMPLE = Path.of("../http-requests/example-xml/outbound/usdc-to-eur-pacs008.xml");
+
+    private final XsdSchemaRegistry schemaRegistry = new XsdSchemaRegistry();
+    private final JaxbMarshallingUtil jaxbMarshallingUtil = new JaxbMarshallingUtil(schemaRegistry);
+    private final MessageStorageService messageStorageService = mock(MessageStorageService.class);
+    private final IdempotencyIndex idempotencyIndex =
+            new IdempotencyIndex(true, 100, "memory", "", new SimpleMeterRegistry());
+    private final MessageIngestionService ingestionService = new MessageIngestionService(jaxbMarshallingUtil,
+            schemaRegistry, Validation.buildDefaultValidatorFactory().getValidator(), messageStorageService,
+            mock(ApplicationEventPublisher.class), new MessageRouter(List.of(new Pacs008V09(), new Pacs008V14())),
+            new Pacs008Splitter(jaxbMarshallingUtil), idempotencyIndex, 1, 256, "streaming", Duration.ofMillis(200));
+    private byte[] xml;
+    private String key;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        xml = Files.readAllBytes(EXAMPLE);
+        Pacs008Version<?, ?, ?> version = new String(xml).contains(Pacs008V14.NAMESPACE) ? new Pacs008V14() : new Pacs008V09();
+        key = version.extractFields(new ByteArrayInputStream(xml), schemaRegistry.getSchema(version.getXsdPath()))
+                .idempotencyKey();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestionService.shutdown();
+    }
+
+    @Test
+    void givesUpOnAConcurrentSubmissionThatDoesNotFinish() {
+        idempotencyIndex.reserve(key, UUID.randomUUID().toString());
+        String messageId = UUID.randomUUID().toString();
+
+        assertThatThrownBy(() -> ingestionService.ingest(xml, messageId, OffsetDateTime.now()))
+                .isInstanceOf(ConcurrentSubmissionException.class);
+        verify(messageStorageService, never()).storeMessages(any());
+    }
+
+    @Test
+    void answersWithTheMessageOfAConcurrentSubmissionOnceItIsStored() throws Exception {
+        String original = UUID.randomUUID().toString();
+        idempotencyIndex.reserve(key, original);
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)
+                .execute(() -> idempotencyIndex.commit(Map.of(key, original)));
+
+        MessageIngestionService.IngestionResult result =
+                ingestionService.ingest(xml, UUID.randomUUID().toString(), OffsetDateTime.now());
+
+        assertThat(result.messageIds()).containsExactly(original);
+        assertThat(result.duplicates()).isEqualTo(1);
+        verify(messageStorageService, never()).storeMessages(any());
+    }
+}
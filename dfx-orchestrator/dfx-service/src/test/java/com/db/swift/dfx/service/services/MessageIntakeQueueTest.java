@@ -0,0 +1,146 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.service.pipeline.ProcessingPipeline;
+import com.db.swift.dfx.service.storage.IdempotencyIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageIntakeQueueTest {
+
+    private static final byte[] XML = "<Document/>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path storage;
+
+    private final MessageIngestionService ingestionService = mock(MessageIngestionService.class);
+    private final IdempotencyIndex idempotencyIndex =
+            new IdempotencyIndex(true, 100, "memory", "", new SimpleMeterRegistry());
+    private final ProcessingPipeline processingPipeline = mock(ProcessingPipeline.class);
+    private MessageIntakeQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        when(processingPipeline.isAccepting()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsMessagesWhileTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(ingestionService.ingest(any(), anyString(), any())).thenAnswer(invocation -> {
+            release.await();
+            return new MessageIngestionService.IngestionResult(List.of(invocation.getArgument(1, String.class)), 0, 0, null);
+        });
+        queue = open(1);
+
+        assertThat(queue.offer(XML, UUID.randomUUID().toString(), OffsetDateTime.now())).isTrue();
+        assertThat(queue.offer(XML, UUID.randomUUID().toString(), OffsetDateTime.now())).isTrue();
+        assertThat(queue.offer(XML, UUID.randomUUID().toString(), OffsetDateTime.now())).isFalse();
+
+        assertThat(spooled()).hasSize(2);
+        release.countDown();
+    }
+
+    @Test
+    void ingestsMessagesLeftInTheSpoolOnStartup() throws Exception {
+        String messageId = UUID.randomUUID().toString();
+        OffsetDateTime receivedTimestamp = OffsetDateTime.parse("2025-08-09T12:00:00Z");
+        when(ingestionService.ingest(any(), anyString(), any())).thenThrow(new IllegalStateException("Storage unavailable"));
+        queue = open(10);
+        queue.offer(XML, messageId, receivedTimestamp);
+        verify(ingestionService, timeout(5000)).ingest(any(), eq(messageId), any());
+        queue.shutdown();
+        assertThat(spooled()).hasSize(1);
+
+        MessageIngestionService restarted = mock(MessageIngestionService.class);
+        when(restarted.ingest(any(), anyString(), any()))
+                .thenReturn(new MessageIngestionService.IngestionResult(List.of(messageId), 0, 0, null));
+        queue = new MessageIntakeQueue(restarted, idempotencyIndex, processingPipeline, true, 10, 1,
+                Duration.ofSeconds(1), "journal", storage.toString(), new SimpleMeterRegistry());
+        queue.recover();
+
+        verify(restarted, timeout(5000)).ingest(XML, messageId, receivedTimestamp);
+        awaitEmptySpool();
+    }
+
+    @Test
+    void recordsTheIdOfAResubmissionAsAlias() throws Exception {
+        String messageId = UUID.randomUUID().toString();
+        String original = UUID.randomUUID().toString();
+        when(ingestionService.ingest(any(), anyString(), any()))
+                .thenReturn(new MessageIngestionService.IngestionResult(List.of(original), 0, 1, null));
+        queue = open(10);
+
+        queue.offer(XML, messageId, OffsetDateTime.now());
+
+        awaitEmptySpool();
+        assertThat(idempotencyIndex.resolveAlias(messageId)).isEqualTo(original);
+    }
+
+    @Test
+    void waitsWhileThePipelineIsFull() throws Exception {
+        String messageId = UUID.randomUUID().toString();
+        when(processingPipeline.isAccepting()).thenReturn(false);
+        when(ingestionService.ingest(any(), anyString(), any()))
+                .thenReturn(new MessageIngestionService.IngestionResult(List.of(messageId), 0, 0, null));
+        queue = open(10);
+
+        queue.offer(XML, messageId, OffsetDateTime.now());
+
+        verify(processingPipeline, timeout(5000).atLeast(2)).isAccepting();
+        verify(ingestionService, never()).ingest(any(), anyString(), any());
+        when(processingPipeline.isAccepting()).thenReturn(true);
+        verify(ingestionService, timeout(5000)).ingest(any(), eq(messageId), any());
+    }
+
+    private MessageIntakeQueue open(int capacity) throws IOException {
+        MessageIntakeQueue opened = new MessageIntakeQueue(ingestionService, idempotencyIndex, processingPipeline, true,
+                capacity, 1, Duration.ofSeconds(1), "journal", storage.toString(), new SimpleMeterRegistry());
+        opened.recover();
+        return opened;
+    }
+
+    private List<Path> spooled() throws IOException {
+        try (Stream<Path> files = Files.list(storage.resolve("intake"))) {
+            return files.toList();
+        }
+    }
+
+    private void awaitEmptySpool() throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!spooled().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(spooled()).isEmpty();
+    }
+}
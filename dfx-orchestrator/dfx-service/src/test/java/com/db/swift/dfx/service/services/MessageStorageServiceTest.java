@@ -0,0 +1,89 @@
+package com.db.swift.dfx.service.services;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import com.db.swift.dfx.service.storage.InMemoryMessageRepository;
+import com.db.swift.dfx.service.storage.InMemoryPayloadBlobStore;
+import com.db.swift.dfx.service.storage.IndexedMessageStore;
+import com.db.swift.dfx.service.storage.MessageArchive;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageStorageServiceTest {
+
+    @TempDir
+    Path storage;
+
+    private final IndexedMessageStore indexedMessageStore = new IndexedMessageStore();
+
+    @Test
+    void archivesTerminalMessagesOnly() {
+        MessageArchive archive = new MessageArchive(Jackson2ObjectMapperBuilder.json().build(), storage.toString());
+        MessageStorageService service = service(archive);
+        StoredMessage completed = message(StoredMessage.TransactionStatusEnum.COMPLETED);
+        StoredMessage received = message(StoredMessage.TransactionStatusEnum.RECEIVED);
+        service.storeMessage(completed);
+        service.storeMessage(received);
+
+        service.archiveMessages();
+
+        assertThat(indexedMessageStore.contains(completed.getMessageId())).isFalse();
+        assertThat(archive.contains(completed.getMessageId())).isTrue();
+        assertThat(indexedMessageStore.contains(received.getMessageId())).isTrue();
+        assertThat(archive.contains(received.getMessageId())).isFalse();
+    }
+
+    @Test
+    void archivesTheCurrentStateOfAMessageChangedWhileBeingArchived() {
+        StoredMessage completed = message(StoredMessage.TransactionStatusEnum.COMPLETED);
+        MessageStorageService[] service = new MessageStorageService[1];
+        MessageArchive archive = new MessageArchive(Jackson2ObjectMapperBuilder.json().build(), storage.toString()) {
+            private boolean changed;
+
+            @Override
+            public void archive(Collection<StoredMessage> messages) {
+                super.archive(messages);
+                if (!changed) {
+                    changed = true;
+                    StoredMessage current = service[0].findMessageById(completed.getMessageId()).orElseThrow();
+                    current.setTargetCcy("USD");
+                    service[0].updateMessage(current);
+                }
+            }
+        };
+        service[0] = service(archive);
+        service[0].storeMessage(completed);
+
+        service[0].archiveMessages();
+
+        assertThat(indexedMessageStore.contains(completed.getMessageId())).isFalse();
+        StoredMessage archived = archive.findById(completed.getMessageId()).orElseThrow();
+        assertThat(archived.getVersion()).isEqualTo(2L);
+        assertThat(archived.getTargetCcy()).isEqualTo("USD");
+    }
+
+    private MessageStorageService service(MessageArchive archive) {
+        MessageStorageService service = new MessageStorageService(new InMemoryMessageRepository(), indexedMessageStore,
+                new InMemoryPayloadBlobStore(), archive, event -> {
+        }, 16, true, Duration.ofMinutes(-1));
+        service.loadMessages();
+        return service;
+    }
+
+    private static StoredMessage message(StoredMessage.TransactionStatusEnum status) {
+        StoredMessage message = new StoredMessage();
+        message.setMessageId(UUID.randomUUID().toString());
+        message.setTransactionStatus(status);
+        message.setTimestamp(OffsetDateTime.now());
+        message.setCcy("EUR");
+        return message;
+    }
+}
@@ -0,0 +1,29 @@
+package com.db.swift.dfx.service.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangeSequencerTest {
+
+    @Test
+    void holdsBackPositionsAfterAChangeInFlight() {
+        ChangeSequencer sequencer = new ChangeSequencer(10);
+        long first = sequencer.next();
+        long second = sequencer.next();
+
+        sequencer.complete(second);
+        assertThat(sequencer.visible()).isEqualTo(10);
+
+        sequencer.complete(first);
+        assertThat(sequencer.visible()).isEqualTo(12);
+    }
+
+    @Test
+    void continuesAfterTheStartPosition() {
+        ChangeSequencer sequencer = new ChangeSequencer(41);
+
+        assertThat(sequencer.visible()).isEqualTo(41);
+        assertThat(sequencer.next()).isEqualTo(42);
+    }
+}
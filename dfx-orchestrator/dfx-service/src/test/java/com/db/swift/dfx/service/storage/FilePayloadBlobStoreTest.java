@@ -0,0 +1,42 @@
+package com.db.swift.dfx.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FilePayloadBlobStoreTest {
+
+    @TempDir
+    Path storage;
+
+    @Test
+    void storesIdenticalContentOnceUnderItsHash() throws IOException {
+        FilePayloadBlobStore blobStore = new FilePayloadBlobStore(storage.toString());
+        byte[] content = "<Document/>".getBytes(StandardCharsets.UTF_8);
+
+        String reference = blobStore.put(content);
+
+        assertThat(blobStore.put(content)).isEqualTo(reference);
+        assertThat(reference).matches(PayloadBlobStore.REFERENCE_PATTERN);
+        assertThat(blobStore.get(reference)).isEqualTo(content);
+        try (Stream<Path> files = Files.walk(storage.resolve("blobs"))) {
+            assertThat(files.filter(Files::isRegularFile).map(file -> file.getFileName().toString()))
+                    .containsExactly(reference + ".gz");
+        }
+    }
+
+    @Test
+    void rejectsInvalidReferences() {
+        FilePayloadBlobStore blobStore = new FilePayloadBlobStore(storage.toString());
+
+        assertThatThrownBy(() -> blobStore.get("../messages.json")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,173 @@
+package com.db.swift.dfx.service.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyIndexTest {
+
+    @TempDir
+    Path storage;
+
+    private IdempotencyIndex index;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Test
+    void answersCommittedTransactionsAfterReopen() throws IOException {
+        String messageId = UUID.randomUUID().toString();
+        index = open(100);
+        assertThat(index.reserve("tx-1", messageId)).isNull();
+        index.commit(Map.of("tx-1", messageId));
+        index.close();
+
+        index = open(100);
+
+        assertThat(index.reserve("tx-1", UUID.randomUUID().toString())).isCompletedWithValue(messageId);
+        assertThat(index.reserve("tx-2", UUID.randomUUID().toString())).isNull();
+    }
+
+    @Test
+    void duplicateOfAReservedTransactionWaitsForItsCommit() throws IOException {
+        String messageId = UUID.randomUUID().toString();
+        index = open(100);
+        index.reserve("tx-1", messageId);
+
+        CompletableFuture<String> duplicate = index.reserve("tx-1", UUID.randomUUID().toString());
+
+        assertThat(duplicate).isNotDone();
+        index.commit(Map.of("tx-1", messageId));
+        assertThat(duplicate).isCompletedWithValue(messageId);
+    }
+
+    @Test
+    void duplicateOfAReleasedTransactionCanReserveIt() throws IOException {
+        index = open(100);
+        index.reserve("tx-1", UUID.randomUUID().toString());
+        CompletableFuture<String> duplicate = index.reserve("tx-1", UUID.randomUUID().toString());
+
+        index.release("tx-1");
+
+        assertThat(duplicate).isCompletedWithValue(null);
+        assertThat(index.reserve("tx-1", UUID.randomUUID().toString())).isNull();
+    }
+
+    @Test
+    void evictsOldestEntriesAndRewritesTheFile() throws IOException {
+        index = open(2);
+        for (int i = 0; i < 6; i++) {
+            String messageId = UUID.randomUUID().toString();
+            index.reserve("tx-" + i, messageId);
+            index.commit(Map.of("tx-" + i, messageId));
+        }
+        index.close();
+
+        index = open(2);
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(Files.size(storage.resolve("idempotency.idx"))).isEqualTo(2 * 4 * Long.BYTES);
+        assertThat(index.reserve("tx-0", UUID.randomUUID().toString())).isNull();
+        assertThat(index.reserve("tx-5", UUID.randomUUID().toString())).isDone();
+    }
+
+    @Test
+    void discardsIncompleteRecordOnReopen() throws IOException {
+        String messageId = UUID.randomUUID().toString();
+        index = open(100);
+        index.reserve("tx-1", messageId);
+        index.commit(Map.of("tx-1", messageId));
+        index.close();
+        Files.write(storage.resolve("idempotency.idx"), new byte[5], StandardOpenOption.APPEND);
+
+        index = open(100);
+
+        assertThat(Files.size(storage.resolve("idempotency.idx"))).isEqualTo(4 * Long.BYTES);
+        assertThat(index.reserve("tx-1", UUID.randomUUID().toString())).isCompletedWithValue(messageId);
+    }
+
+    @Test
+    void cutsOffAPartiallyWrittenCommit() throws IOException {
+        String messageId = UUID.randomUUID().toString();
+        index = open(100);
+        index.reserve("tx-1", messageId);
+        index.commit(Map.of("tx-1", messageId));
+        FileChannel file = (FileChannel) ReflectionTestUtils.getField(index, "channel");
+        FileChannel failing = mock(FileChannel.class);
+        when(failing.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            buffer.limit(buffer.position() + 5);
+            file.write(buffer);
+            throw new IOException("Disk full");
+        });
+        when(failing.truncate(anyLong())).thenAnswer(invocation -> file.truncate(invocation.getArgument(0)));
+        when(failing.position(anyLong())).thenAnswer(invocation -> file.position(invocation.getArgument(0)));
+        ReflectionTestUtils.setField(index, "channel", failing);
+
+        String failedId = UUID.randomUUID().toString();
+        index.reserve("tx-2", failedId);
+        index.commit(Map.of("tx-2", failedId));
+        ReflectionTestUtils.setField(index, "channel", file);
+        String laterId = UUID.randomUUID().toString();
+        index.reserve("tx-3", laterId);
+        index.commit(Map.of("tx-3", laterId));
+        index.close();
+
+        assertThat(Files.size(storage.resolve("idempotency.idx"))).isEqualTo(2 * 4 * Long.BYTES);
+        index = open(100);
+        assertThat(index.reserve("tx-1", UUID.randomUUID().toString())).isCompletedWithValue(messageId);
+        assertThat(index.reserve("tx-3", UUID.randomUUID().toString())).isCompletedWithValue(laterId);
+        assertThat(index.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void stopsTakingNewTransactionsIfTheFileCanNotBeCutBack() throws IOException {
+        index = open(100);
+        FileChannel file = (FileChannel) ReflectionTestUtils.getField(index, "channel");
+        FileChannel failing = mock(FileChannel.class);
+        when(failing.write(any(ByteBuffer.class))).thenThrow(new IOException("Disk full"));
+        when(failing.truncate(anyLong())).thenThrow(new IOException("Disk gone"));
+        ReflectionTestUtils.setField(index, "channel", failing);
+        String messageId = UUID.randomUUID().toString();
+        index.reserve("tx-1", messageId);
+
+        index.commit(Map.of("tx-1", messageId));
+
+        assertThat(index.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(index.reserve("tx-1", UUID.randomUUID().toString())).isCompletedWithValue(messageId);
+        assertThatThrownBy(() -> index.reserve("tx-2", UUID.randomUUID().toString()))
+                .isInstanceOf(UncheckedIOException.class);
+        ReflectionTestUtils.setField(index, "channel", file);
+    }
+
+    private IdempotencyIndex open(int maxEntries) throws IOException {
+        IdempotencyIndex opened = new IdempotencyIndex(true, maxEntries, "journal", storage.toString(), new SimpleMeterRegistry());
+        opened.open();
+        return opened;
+    }
+}
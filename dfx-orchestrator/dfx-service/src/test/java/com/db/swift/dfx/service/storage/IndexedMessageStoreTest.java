@@ -0,0 +1,126 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexedMessageStoreTest {
+
+    private static final OffsetDateTime START = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final IndexedMessageStore store = new IndexedMessageStore();
+
+    @Test
+    void pagesThroughAllMessagesInTimestampOrder() {
+        for (int i = 9; i >= 0; i--) {
+            store.put(message("m" + i, i, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR"));
+        }
+
+        assertThat(collectPages(MessageQuery.all(), 3))
+                .containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9");
+    }
+
+    @Test
+    void pagesThroughFilteredMessagesInTimestampOrder() {
+        for (int i = 0; i < 10; i++) {
+            StoredMessage.TransactionStatusEnum status = i % 2 == 0
+                    ? StoredMessage.TransactionStatusEnum.COMPLETED : StoredMessage.TransactionStatusEnum.RECEIVED;
+            store.put(message("m" + i, 10 - i, status, i < 6 ? "EUR" : "USD"));
+        }
+        MessageQuery completed = MessageQuery.builder().transactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED).build();
+        MessageQuery completedInEur = MessageQuery.builder()
+                .transactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED).ccy("EUR").build();
+
+        assertThat(collectPages(completed, 2)).containsExactly("m8", "m6", "m4", "m2", "m0");
+        assertThat(collectPages(completedInEur, 2)).containsExactly("m4", "m2", "m0");
+    }
+
+    @Test
+    void appliesTheTimeRangeToFilteredMessages() {
+        for (int i = 0; i < 10; i++) {
+            store.put(message("m" + i, i, StoredMessage.TransactionStatusEnum.COMPLETED, "EUR"));
+        }
+        MessageQuery query = MessageQuery.builder()
+                .transactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED)
+                .from(START.plusMinutes(3))
+                .to(START.plusMinutes(7))
+                .build();
+
+        assertThat(collectPages(query, 3)).containsExactly("m3", "m4", "m5", "m6");
+    }
+
+    @Test
+    void movesUpdatedMessagesBetweenIndexEntries() {
+        store.put(message("a", 1, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR"));
+        store.put(message("b", 2, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR"));
+        store.put(message("a", 3, StoredMessage.TransactionStatusEnum.COMPLETED, "EUR"));
+        store.remove("b");
+
+        MessageQuery received = MessageQuery.builder().transactionStatus(StoredMessage.TransactionStatusEnum.RECEIVED).build();
+        MessageQuery completed = MessageQuery.builder().transactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED).build();
+        assertThat(store.find(received)).isEmpty();
+        assertThat(store.find(completed)).extracting(StoredMessage::getMessageId).containsExactly("a");
+        assertThat(store.find(MessageQuery.builder().ccy("EUR").build())).extracting(StoredMessage::getMessageId)
+                .containsExactly("a");
+    }
+
+    @Test
+    void keepsTheStagesOfUnfinishedMessagesApart() {
+        StoredMessage waiting = message("a", 1, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR");
+        waiting.setPipelineStage(0);
+        store.put(waiting);
+        StoredMessage removed = message("b", 2, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR");
+        removed.setPipelineStage(0);
+        store.put(removed);
+        StoredMessage finished = message("c", 3, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR");
+        finished.setPipelineStage(2);
+        store.put(finished);
+        store.put(message("d", 4, StoredMessage.TransactionStatusEnum.COMPLETED, "EUR"));
+
+        waiting.setPipelineStage(1);
+        store.put(waiting);
+        store.remove("b");
+        finished.setPipelineStage(null);
+        finished.setTransactionStatus(StoredMessage.TransactionStatusEnum.COMPLETED);
+        store.put(finished);
+
+        assertThat(store.findPipelineStages()).containsExactly(Map.entry("a", 1));
+    }
+
+    @Test
+    void returnsCopies() {
+        store.put(message("a", 1, StoredMessage.TransactionStatusEnum.RECEIVED, "EUR"));
+
+        store.get("a").orElseThrow().setCcy("USD");
+
+        assertThat(store.get("a").orElseThrow().getCcy()).isEqualTo("EUR");
+    }
+
+    private List<String> collectPages(MessageQuery query, int limit) {
+        List<String> ids = new ArrayList<>();
+        MessageCursor cursor = null;
+        do {
+            MessagePage<StoredMessage> page = store.find(query, cursor, limit);
+            assertThat(page.messages()).hasSizeLessThanOrEqualTo(limit);
+            page.messages().forEach(message -> ids.add(message.getMessageId()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static StoredMessage message(String messageId, int minute, StoredMessage.TransactionStatusEnum status, String ccy) {
+        StoredMessage message = new StoredMessage();
+        message.setMessageId(messageId);
+        message.setTimestamp(START.plusMinutes(minute));
+        message.setTransactionStatus(status);
+        message.setCcy(ccy);
+        return message;
+    }
+}
@@ -0,0 +1,176 @@
+package com.db.swift.dfx.service.storage;
+
+import com.db.swift.dfx.openapi.model.StoredMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageJournalTest {
+
+    @TempDir
+    Path storage;
+
+    private MessageJournal journal;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replaysLatestRecordsAndTombstonesOnReopen() throws Exception {
+        journal = open(JournalDurability.GROUP, 64 * 1024 * 1024);
+        journal.save(message("a", StoredMessage.TransactionStatusEnum.RECEIVED));
+        journal.save(message("b", StoredMessage.TransactionStatusEnum.RECEIVED));
+        journal.save(message("a", StoredMessage.TransactionStatusEnum.COMPLETED));
+        journal.delete("b");
+        journal.close();
+
+        journal = open(JournalDurability.GROUP, 64 * 1024 * 1024);
+
+        assertThat(journal.size()).isEqualTo(1);
+        assertThat(journal.findById("a")).get().extracting(StoredMessage::getTransactionStatus)
+                .isEqualTo(StoredMessage.TransactionStatusEnum.COMPLETED);
+        assertThat(journal.findById("b")).isEmpty();
+    }
+
+    @Test
+    void replaysRecordsLongerThanTheScanBuffer() throws Exception {
+        journal = open(JournalDurability.SYNC, 64 * 1024 * 1024);
+        StoredMessage large = message("large", StoredMessage.TransactionStatusEnum.RECEIVED);
+        large.setPayload("x".repeat(200 * 1024));
+        journal.save(large);
+        journal.save(message("small", StoredMessage.TransactionStatusEnum.RECEIVED));
+        journal.close();
+
+        journal = open(JournalDurability.SYNC, 64 * 1024 * 1024);
+
+        assertThat(journal.findById("large")).get().extracting(StoredMessage::getPayload).isEqualTo(large.getPayload());
+        assertThat(journal.findById("small")).isPresent();
+    }
+
+    @Test
+    void truncatesTornRecordOnReopen() throws Exception {
+        journal = open(JournalDurability.SYNC, 64 * 1024 * 1024);
+        journal.save(message("a", StoredMessage.TransactionStatusEnum.RECEIVED));
+        journal.close();
+        Path segment = segments().get(0);
+        long intactSize = Files.size(segment);
+        Files.write(segment, "{\"messageId\":\"torn\",\"ccy\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = open(JournalDurability.SYNC, 64 * 1024 * 1024);
+
+        assertThat(Files.size(segment)).isEqualTo(intactSize);
+        assertThat(journal.contains("torn")).isFalse();
+        journal.save(message("b", StoredMessage.TransactionStatusEnum.RECEIVED));
+        assertThat(journal.findById("a")).isPresent();
+        assertThat(journal.findById("b")).isPresent();
+    }
+
+    @Test
+    void compactionCopiesLiveRecordsAndDeletesTheSegment() throws Exception {
+        journal = open(JournalDurability.SYNC, 1024);
+        for (int i = 0; i < 20; i++) {
+            journal.save(message("m" + (i % 2), StoredMessage.TransactionStatusEnum.RECEIVED));
+        }
+        journal.save(message("m0", StoredMessage.TransactionStatusEnum.COMPLETED));
+        List<Path> before = segments();
+        assertThat(before).hasSizeGreaterThan(1);
+
+        journal.compact();
+
+        assertThat(segments()).doesNotContain(before.get(0));
+        journal.close();
+        journal = open(JournalDurability.SYNC, 1024);
+        assertThat(journal.size()).isEqualTo(2);
+        assertThat(journal.findById("m0")).get().extracting(StoredMessage::getTransactionStatus)
+                .isEqualTo(StoredMessage.TransactionStatusEnum.COMPLETED);
+        assertThat(journal.findById("m1")).isPresent();
+    }
+
+    @Test
+    void rejectsWritesAfterClose() throws Exception {
+        journal = open(JournalDurability.GROUP, 64 * 1024 * 1024);
+        journal.close();
+
+        assertThatThrownBy(() -> journal.save(message("a", StoredMessage.TransactionStatusEnum.RECEIVED)))
+                .isInstanceOf(IllegalStateException.class);
+        journal = null;
+    }
+
+    @Test
+    void saveAllWaitsForTheGroupCommit() throws Exception {
+        journal = open(JournalDurability.GROUP, 64 * 1024 * 1024);
+
+        journal.saveAll(List.of(message("a", StoredMessage.TransactionStatusEnum.RECEIVED),
+                message("b", StoredMessage.TransactionStatusEnum.RECEIVED)));
+
+        assertThat(journal.contains("a")).isTrue();
+        assertThat(journal.contains("b")).isTrue();
+    }
+
+    @Test
+    void stopsAcceptingWritesAfterAFailedAsyncCommit() throws Exception {
+        journal = open(JournalDurability.ASYNC, 64 * 1024 * 1024);
+        Object activeSegment = ReflectionTestUtils.getField(journal, "activeSegment");
+        ((FileChannel) ReflectionTestUtils.getField(activeSegment, "channel")).close();
+
+        journal.save(message("a", StoredMessage.TransactionStatusEnum.RECEIVED));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (journal.health().getStatus() == Status.UP && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(journal.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThatThrownBy(() -> journal.save(message("b", StoredMessage.TransactionStatusEnum.RECEIVED)))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> journal.saveAll(List.of(message("c", StoredMessage.TransactionStatusEnum.RECEIVED))))
+                .isInstanceOf(UncheckedIOException.class);
+    }
+
+    private MessageJournal open(JournalDurability durability, long segmentSize) throws IOException {
+        MessageJournal opened = new MessageJournal(Jackson2ObjectMapperBuilder.json().build(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(opened, "storagePath", storage.toString());
+        ReflectionTestUtils.setField(opened, "maxSegmentSize", segmentSize);
+        ReflectionTestUtils.setField(opened, "compactionThreshold", 0.5);
+        ReflectionTestUtils.setField(opened, "durability", durability);
+        ReflectionTestUtils.setField(opened, "groupCommitWindow", Duration.ofMillis(2));
+        ReflectionTestUtils.setField(opened, "maxBatchSize", 256);
+        opened.open();
+        return opened;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(storage.resolve("journal"))) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static StoredMessage message(String messageId, StoredMessage.TransactionStatusEnum status) {
+        StoredMessage message = new StoredMessage();
+        message.setMessageId(messageId);
+        message.setTransactionStatus(status);
+        message.setCcy("EUR");
+        return message;
+    }
+}
@@ -0,0 +1,84 @@
+package com.db.swift.dfx.service.utils;
+
+import com.db.swift.dfx.jaxb.model.pacs008.Document;
+import com.db.swift.dfx.service.iso20022.Pacs008Field;
+import com.db.swift.dfx.service.iso20022.Pacs008V14;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Pacs008SplitterTest {
+
+    private final Pacs008V14 version = new Pacs008V14();
+    private final Pacs008Splitter splitter = new Pacs008Splitter(new JaxbMarshallingUtil(new XsdSchemaRegistry()));
+
+    @Test
+    void splitsTransactionsInDocumentOrderWithAdjustedHeader() {
+        List<Document> documents = split(message(3, "1500.00", "TX-1", "TX-2", "TX-3"));
+
+        assertThat(documents).hasSize(3);
+        assertThat(documents).extracting(document -> version.fields(document).get(Pacs008Field.END_TO_END_ID))
+                .containsExactly("TX-1", "TX-2", "TX-3");
+        assertThat(documents).allSatisfy(document -> {
+            assertThat(document.getFIToFICstmrCdtTrf().getCdtTrfTxInf()).hasSize(1);
+            assertThat(document.getFIToFICstmrCdtTrf().getGrpHdr().getNbOfTxs()).isEqualTo("1");
+            assertThat(document.getFIToFICstmrCdtTrf().getGrpHdr().getMsgId()).isEqualTo("MSG-1");
+            assertThat(document.getFIToFICstmrCdtTrf().getGrpHdr().getCtrlSum()).isEqualByComparingTo(new BigDecimal("500.00"));
+        });
+    }
+
+    @Test
+    void returnsNoTransactionsForAnEmptyMessage() {
+        assertThat(split(message(0, "0"))).isEmpty();
+    }
+
+    @Test
+    void rejectsMessagesOfAnotherVersion() {
+        String xml = message(1, "500.00", "TX-1").replace(Pacs008V14.NAMESPACE, "urn:iso:std:iso:20022:tech:xsd:pacs.008.001.09");
+
+        assertThatThrownBy(() -> split(xml)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedMessagesWhileReading() {
+        String xml = message(2, "1000.00", "TX-1", "TX-2");
+        String truncated = xml.substring(0, xml.lastIndexOf("<CdtTrfTxInf>") + 30);
+
+        assertThatThrownBy(() -> split(truncated))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("after transaction 1");
+    }
+
+    private List<Document> split(String xml) {
+        try (Stream<Document> documents = splitter.split(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), version)) {
+            return documents.toList();
+        }
+    }
+
+    private static String message(int transactions, String ctrlSum, String... endToEndIds) {
+        StringBuilder xml = new StringBuilder()
+                .append("<Document xmlns=\"").append(Pacs008V14.NAMESPACE).append("\"><FIToFICstmrCdtTrf><GrpHdr>")
+                .append("<MsgId>MSG-1</MsgId><CreDtTm>2025-08-09T12:00:00Z</CreDtTm>")
+                .append("<NbOfTxs>").append(transactions).append("</NbOfTxs>")
+                .append("<CtrlSum>").append(ctrlSum).append("</CtrlSum>")
+                .append("<SttlmInf><SttlmMtd>CLRG</SttlmMtd></SttlmInf></GrpHdr>");
+        for (String endToEndId : endToEndIds) {
+            xml.append("<CdtTrfTxInf><PmtId><EndToEndId>").append(endToEndId).append("</EndToEndId>")
+                    .append("<UETR>f4b1b3b4-1b1b-4b1b-8b1b-1b1b1b1b1b1b</UETR></PmtId>")
+                    .append("<IntrBkSttlmAmt Ccy=\"EUR\">500.00</IntrBkSttlmAmt><ChrgBr>SHAR</ChrgBr>")
+                    .append("<Dbtr><Nm>Debtor</Nm></Dbtr>")
+                    .append("<DbtrAgt><FinInstnId><BICFI>DEUTDEFFXXX</BICFI></FinInstnId></DbtrAgt>")
+                    .append("<CdtrAgt><FinInstnId><BICFI>BKTRUS33XXX</BICFI></FinInstnId></CdtrAgt>")
+                    .append("<Cdtr><Nm>Creditor</Nm></Cdtr></CdtTrfTxInf>");
+        }
+        return xml.append("</FIToFICstmrCdtTrf></Document>").toString();
+    }
+}
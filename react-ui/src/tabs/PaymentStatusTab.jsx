@@ -74,6 +74,7 @@ function formatTimestamp(ts) {
 }
 
 function decodeBase64(str) {
+    if (!str) return "";
     try {
         return decodeURIComponent(escape(window.atob(str)));
     } catch {
@@ -131,6 +132,7 @@ export default function PaymentStatusTab() {
     const [sortCol, setSortCol] = useState(null);
     const [sortDir, setSortDir] = useState("asc");
     const [selectedRow, setSelectedRow] = useState(null);
+    const [selectedDetails, setSelectedDetails] = useState(null);
     const [copySuccess, setCopySuccess] = useState(false);
     const [activePayloadTab, setActivePayloadTab] = useState("pacs");
 
@@ -139,15 +141,15 @@ export default function PaymentStatusTab() {
     const [fetchInterval, setFetchInterval] = useState(5);
 
     // Default XML type based on selected row
-    const xmlType = selectedRow
-        ? extractXmlType(formatXml(decodeBase64(selectedRow.payload)))
+    const xmlType = selectedDetails
+        ? extractXmlType(formatXml(decodeBase64(selectedDetails.payload)))
         : "pacs";
 
     // Fetch data with interval
     useEffect(() => {
         let intervalId;
         const fetchData = () => {
-            fetch("http://localhost:8080/list")
+            fetch("http://localhost:8080/list/summary")
                 .then(res => res.json())
                 .then(setData)
                 .catch(() => setData([]));
@@ -157,6 +159,20 @@ export default function PaymentStatusTab() {
         return () => clearInterval(intervalId);
     }, [fetchInterval]);
 
+    // The list only holds summaries, payloads and audit trail are loaded for the selected row
+    useEffect(() => {
+        setSelectedDetails(null);
+        if (!selectedRow) return;
+        let cancelled = false;
+        fetch(`http://localhost:8080/messages/${encodeURIComponent(selectedRow.messageId)}`)
+            .then(res => res.json())
+            .then(details => !cancelled && setSelectedDetails(details))
+            .catch(() => !cancelled && setSelectedDetails(null));
+        return () => {
+            cancelled = true;
+        };
+    }, [selectedRow]);
+
     useEffect(() => {
         localStorage.setItem(STORAGE_KEY, JSON.stringify(visibleCols));
     }, [visibleCols]);
@@ -483,7 +499,7 @@ export default function PaymentStatusTab() {
                             <div style={{flex: 1, minWidth: 0}}>
                                 <h3>Audit Trail</h3>
                                 <ul style={{paddingLeft: 16}}>
-                                    {(selectedRow.auditTrail || []).map((entry, i) => (
+                                    {(selectedDetails?.auditTrail || []).map((entry, i) => (
                                         <li key={i} style={{marginBottom: 8}}>
                                             <b>{entry.action}</b>
                                             <br/>
@@ -563,15 +579,15 @@ export default function PaymentStatusTab() {
                                         customStyle={{background: "transparent", margin: 0, padding: 0}}
                                     >
                                         {activePayloadTab === "pacs"
-                                            ? formatXml(decodeBase64(selectedRow.payload))
-                                            : formatXml(decodeBase64(selectedRow.fxtrPayload))}
+                                            ? formatXml(decodeBase64(selectedDetails?.payload))
+                                            : formatXml(decodeBase64(selectedDetails?.fxtrPayload))}
                                     </SyntaxHighlighter>
                                 </div>
                                 <button
                                     onClick={() => {
                                         const text = activePayloadTab === "pacs"
-                                            ? formatXml(decodeBase64(selectedRow.payload))
-                                            : formatXml(decodeBase64(selectedRow.fxtrPayload));
+                                            ? formatXml(decodeBase64(selectedDetails?.payload))
+                                            : formatXml(decodeBase64(selectedDetails?.fxtrPayload));
                                         navigator.clipboard.writeText(text);
                                         setCopySuccess(true);
                                         setTimeout(() => setCopySuccess(false), 2000);